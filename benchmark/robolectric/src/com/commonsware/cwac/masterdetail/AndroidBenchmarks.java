@@ -0,0 +1,363 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import android.app.Fragment;
+import android.os.Bundle;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ListAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import com.mobidevelop.widget.SplitPaneLayout;
+
+/**
+ * Runs the benchmarks for the hot paths that need real
+ * Views, under Robolectric, writing results as Benchmarks
+ * does. The device is configured as a tablet, so the
+ * helper uses DualPane.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest="../library/AndroidManifest.xml", sdk=18,
+        qualifiers="w1024dp-h768dp-land")
+public class AndroidBenchmarks {
+  @Test
+  public void run() throws IOException {
+    Benchmarks.run(buildSuite(),
+                   System.getProperty("bench.results",
+                                      "bench-android-results.jsonl"),
+                   System.getProperty("bench.filter", ""));
+  }
+
+  static List<Benchmark> buildSuite() {
+    List<Benchmark> result=new ArrayList<Benchmark>();
+
+    result.add(new AdapterGetView());
+    result.add(new AdapterItemIds());
+    result.add(new DualPaneShowDetail(0));
+    result.add(new DualPaneShowDetail(DualPaneShowDetail.CACHE_SIZE));
+    result.add(new SplitPaneMeasureLayout());
+
+    return(result);
+  }
+
+  /**
+   * A benchmark against a real BenchActivity and its
+   * controller, holding size models, built once per size.
+   */
+  abstract static class ActivityBenchmark extends Benchmark {
+    BenchController helper;
+    private int builtSize=-1;
+
+    @Override
+    int[] getSizes() {
+      return(new int[] { 100, 1000, 10000 });
+    }
+
+    @Override
+    void setUp(int size) {
+      if (builtSize != size) {
+        BenchActivity.size=size;
+        BenchActivity.detailCacheSize=getDetailCacheSize();
+
+        BenchActivity activity=
+            Robolectric.buildActivity(BenchActivity.class).setup().get();
+
+        helper=(BenchController)activity.getHelper();
+        builtSize=size;
+      }
+    }
+
+    int getDetailCacheSize() {
+      return(0);
+    }
+
+    ListAdapter getAdapter() {
+      return(helper.getListView().getAdapter());
+    }
+  }
+
+  /**
+   * PagerListAdapter.getView(): bind every row, recycling
+   * one row View, as ListView does while flinging.
+   */
+  static class AdapterGetView extends ActivityBenchmark {
+    @Override
+    String getName() {
+      return("adapter.getView");
+    }
+
+    @Override
+    long run() {
+      ListView list=helper.getListView();
+      ListAdapter adapter=getAdapter();
+      View row=null;
+      long result=0;
+
+      for (int i=0; i < adapter.getCount(); i++) {
+        row=adapter.getView(i, row, list);
+        result+=row.hashCode();
+      }
+
+      return(result);
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(size);
+    }
+  }
+
+  /**
+   * PagerListAdapter.getItemId(): the tag-derived stable ID
+   * of every row, as ListView asks for on each layout in
+   * multiple-choice mode.
+   */
+  static class AdapterItemIds extends ActivityBenchmark {
+    @Override
+    String getName() {
+      return("adapter.getItemId");
+    }
+
+    @Override
+    long run() {
+      ListAdapter adapter=getAdapter();
+      long result=0;
+
+      for (int i=0; i < adapter.getCount(); i++) {
+        result^=adapter.getItemId(i);
+      }
+
+      return(result);
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(size);
+    }
+  }
+
+  /**
+   * DualPane.showDetail(), via the helper: show the detail
+   * for SHOWN rows spread through the list, with no detail
+   * cache, or the same few rows over and over with one.
+   */
+  static class DualPaneShowDetail extends ActivityBenchmark {
+    static final int CACHE_SIZE=4;
+    private static final int SHOWN=50;
+
+    private final int cacheSize;
+
+    DualPaneShowDetail(int cacheSize) {
+      this.cacheSize=cacheSize;
+    }
+
+    @Override
+    String getName() {
+      return(cacheSize > 0 ? "dualPane.showDetail.cached"
+          : "dualPane.showDetail");
+    }
+
+    @Override
+    int getDetailCacheSize() {
+      return(cacheSize);
+    }
+
+    @Override
+    long run() {
+      int count=getAdapter().getCount();
+      int step=(cacheSize > 0 ? 1 : Math.max(1, count / SHOWN));
+      int span=(cacheSize > 0 ? cacheSize : count);
+
+      for (int i=0; i < SHOWN; i++) {
+        helper.showDetail((i * step) % span);
+        helper.getFragmentManager().executePendingTransactions();
+      }
+
+      return(helper.getFragmentManager().getBackStackEntryCount());
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(SHOWN);
+    }
+  }
+
+  /**
+   * SplitPaneLayout.onMeasure() and onLayout(): size full
+   * passes at tablet size, moving the splitter a little each
+   * time, as a drag does.
+   */
+  static class SplitPaneMeasureLayout extends Benchmark {
+    private static final int WIDTH=1024;
+    private static final int HEIGHT=768;
+
+    private SplitPaneLayout layout;
+    private int passes;
+
+    @Override
+    String getName() {
+      return("splitPane.measureLayout");
+    }
+
+    @Override
+    int[] getSizes() {
+      return(new int[] { 100, 1000 });
+    }
+
+    @Override
+    void setUp(int size) {
+      if (layout == null) {
+        layout=new SplitPaneLayout(RuntimeEnvironment.application);
+        layout.setOrientation(SplitPaneLayout.ORIENTATION_HORIZONTAL);
+
+        for (int i=0; i < 2; i++) {
+          FrameLayout pane=new FrameLayout(RuntimeEnvironment.application);
+          TextView text=new TextView(RuntimeEnvironment.application);
+
+          text.setText("Pane #" + i);
+          pane.addView(text);
+          layout.addView(pane,
+                         new ViewGroup.LayoutParams(
+                                                    ViewGroup.LayoutParams.MATCH_PARENT,
+                                                    ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+      }
+
+      passes=size;
+    }
+
+    @Override
+    long run() {
+      int widthSpec=
+          View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY);
+      int heightSpec=
+          View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY);
+      long result=0;
+
+      for (int i=0; i < passes; i++) {
+        layout.setSplitterPositionPercent(0.25f + (i % 50) / 100f);
+        layout.measure(widthSpec, heightSpec);
+        layout.layout(0, 0, WIDTH, HEIGHT);
+        result+=layout.getChildAt(0).getWidth();
+      }
+
+      return(result);
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(size);
+    }
+  }
+
+  public static class BenchActivity extends
+      MasterDetailActivity<List<Benchmarks.Model>> {
+    static int size;
+    static int detailCacheSize;
+
+    @Override
+    protected MasterDetailHelper<List<Benchmarks.Model>> buildMasterDetailHelper() {
+      return(new BenchController(size, detailCacheSize));
+    }
+  }
+
+  static class BenchController extends
+      MasterDetailController<Benchmarks.Model> {
+    private final int size;
+
+    BenchController(int size, int detailCacheSize) {
+      super(buildOptions(detailCacheSize));
+      this.size=size;
+    }
+
+    private static MasterDetailController.Options buildOptions(int detailCacheSize) {
+      MasterDetailController.Options result=
+          new MasterDetailController.Options();
+
+      result.detailCacheSize(detailCacheSize);
+
+      return(result);
+    }
+
+    @Override
+    protected List<Benchmarks.Model> buildModelCollection() {
+      return(Benchmarks.buildModels(Benchmarks.buildTags(size)));
+    }
+
+    @Override
+    protected String getModelTag(Benchmarks.Model model) {
+      return(model.tag);
+    }
+
+    @Override
+    protected String getModelTitle(Benchmarks.Model model) {
+      return(model.title);
+    }
+
+    @Override
+    protected Fragment buildFragmentForTag(String tag) {
+      return(DetailFragment.newInstance(tag));
+    }
+
+    @Override
+    protected Benchmarks.Model createNewModel() {
+      String tag=UUID.randomUUID().toString();
+
+      return(new Benchmarks.Model(tag, tag));
+    }
+
+    @Override
+    protected void removeModel(Benchmarks.Model model) {
+      // nothing stored, so nothing to do
+    }
+  }
+
+  public static class DetailFragment extends Fragment {
+    private static final String KEY_TAG="tag";
+
+    static DetailFragment newInstance(String tag) {
+      DetailFragment result=new DetailFragment();
+      Bundle args=new Bundle();
+
+      args.putString(KEY_TAG, tag);
+      result.setArguments(args);
+
+      return(result);
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle state) {
+      TextView result=new TextView(getActivity());
+
+      result.setText(getArguments().getString(KEY_TAG));
+
+      return(result);
+    }
+  }
+}
@@ -0,0 +1,44 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+/**
+ * One benchmark, run at one or more sizes. For each size,
+ * setUp() is called before every timed run(), so run() can
+ * consume whatever setUp() built.
+ */
+abstract class Benchmark {
+  abstract String getName();
+
+  abstract void setUp(int size);
+
+  /**
+   * @return a value derived from the work done, so the JIT
+   *         cannot discard it
+   */
+  abstract long run();
+
+  int[] getSizes() {
+    return(new int[] { 1000, 10000, 100000 });
+  }
+
+  /**
+   * @return the number of operations performed by one
+   *         run(), for reporting per-operation costs
+   */
+  int getOperations(int size) {
+    return(1);
+  }
+}
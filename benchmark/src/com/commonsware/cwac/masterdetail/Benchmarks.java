@@ -0,0 +1,439 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Runs the benchmark suite, writing one JSON object per
+ * line (benchmark, size) to the results file, and a short
+ * human-readable summary to stdout.
+ * 
+ * Usage: Benchmarks [results-file [name-filter]]
+ */
+public class Benchmarks {
+  private static final int WARMUP_RUNS=10;
+  private static final int TIMED_RUNS=30;
+
+  public static void main(String[] args) throws IOException {
+    String results=(args.length > 0 ? args[0] : "bench-results.jsonl");
+    String filter=(args.length > 1 ? args[1] : "");
+
+    run(buildSuite(), results, filter);
+  }
+
+  /**
+   * Runs a suite, this one or another (e.g., the Robolectric
+   * one), writing the results as described above.
+   * 
+   * @param suite
+   *          the benchmarks to run
+   * @param results
+   *          the file to write the results to
+   * @param filter
+   *          text that a benchmark's name must contain for
+   *          it to be run
+   */
+  static void run(List<Benchmark> suite, String results, String filter)
+    throws IOException {
+    PrintWriter out=new PrintWriter(new FileWriter(results));
+    long sink=0;
+
+    try {
+      for (Benchmark b : suite) {
+        if (b.getName().contains(filter)) {
+          for (int size : b.getSizes()) {
+            long[] timings=new long[TIMED_RUNS];
+
+            for (int i=0; i < WARMUP_RUNS; i++) {
+              b.setUp(size);
+              sink+=b.run();
+            }
+
+            for (int i=0; i < TIMED_RUNS; i++) {
+              b.setUp(size);
+
+              long start=System.nanoTime();
+
+              sink+=b.run();
+              timings[i]=System.nanoTime() - start;
+            }
+
+            String line=toJson(b, size, timings);
+
+            out.println(line);
+            System.out.println(line);
+          }
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+
+    if (sink == 42) {
+      System.out.println(); // keeps sink alive
+    }
+  }
+
+  static List<Benchmark> buildSuite() {
+    List<Benchmark> result=new ArrayList<Benchmark>();
+
+    result.add(new TagIndexAppend());
+    result.add(new ControllerRemoveChecked());
+    result.add(new ControllerFindByTag());
+    result.add(new ControllerUpdateDiff(ControllerUpdateDiff.FEW));
+    result.add(new ControllerUpdateDiff(ControllerUpdateDiff.REVERSED));
+    result.add(new ControllerUpdateDiff(ControllerUpdateDiff.SHUFFLED));
+    result.add(new ControllerFilter());
+
+    return(result);
+  }
+
+  private static String toJson(Benchmark b, int size, long[] timings) {
+    long[] sorted=timings.clone();
+    long total=0;
+
+    Arrays.sort(sorted);
+
+    for (long t : sorted) {
+      total+=t;
+    }
+
+    int ops=b.getOperations(size);
+    StringBuilder buf=new StringBuilder();
+
+    buf.append("{\"benchmark\":\"").append(b.getName()).append('"');
+    buf.append(",\"size\":").append(size);
+    buf.append(",\"runs\":").append(sorted.length);
+    buf.append(",\"opsPerRun\":").append(ops);
+    buf.append(",\"meanNs\":").append(total / sorted.length);
+    buf.append(",\"p50Ns\":").append(sorted[sorted.length / 2]);
+    buf.append(",\"p90Ns\":").append(sorted[sorted.length * 9 / 10]);
+    buf.append(",\"minNs\":").append(sorted[0]);
+    buf.append(",\"nsPerOp\":").append(sorted[sorted.length / 2] / ops);
+    buf.append(",\"java\":\"")
+       .append(System.getProperty("java.version")).append('"');
+    buf.append('}');
+
+    return(buf.toString());
+  }
+
+  static String[] buildTags(int size) {
+    String[] result=new String[size];
+    Random random=new Random(size);
+
+    for (int i=0; i < size; i++) {
+      result[i]=
+          new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    return(result);
+  }
+
+  /**
+   * Stand-in model: a tag plus a title, as in the demo.
+   */
+  static class Model {
+    final String tag;
+    final String title;
+
+    Model(String tag, String title) {
+      this.tag=tag;
+      this.title=title;
+    }
+  }
+
+  static class ModelIndex extends TagIndex<Model> {
+    @Override
+    String getTag(Model model) {
+      return(model.tag);
+    }
+  }
+
+  static ArrayList<Model> buildModels(String[] tags) {
+    ArrayList<Model> result=new ArrayList<Model>(tags.length);
+
+    for (int i=0; i < tags.length; i++) {
+      result.add(new Model(tags[i], "Note #" + i));
+    }
+
+    return(result);
+  }
+
+  /**
+   * TagIndex.onAppended(): append to the model list and keep
+   * the tag index current, for size models, as appending
+   * models to an unsorted collection does.
+   */
+  static class TagIndexAppend extends Benchmark {
+    private String[] tags;
+
+    @Override
+    String getName() {
+      return("tagIndex.append");
+    }
+
+    @Override
+    void setUp(int size) {
+      if (tags == null || tags.length != size) {
+        tags=buildTags(size);
+      }
+    }
+
+    @Override
+    long run() {
+      ArrayList<Model> models=new ArrayList<Model>();
+      ModelIndex index=new ModelIndex();
+
+      index.positionOf(models, "prime-the-index", 0);
+
+      for (int i=0; i < tags.length; i++) {
+        models.add(new Model(tags[i], tags[i]));
+        index.onAppended(models, i + 1);
+      }
+
+      return(index.positionOf(models, tags[tags.length / 2], tags.length));
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(size);
+    }
+  }
+
+  /**
+   * MasterDetailController.removeChecked(), while filtered
+   * to every other model: remove every fifth visible model
+   * in one pass, dropping it from the visible-position map
+   * and the title index, then look one up (which rebuilds
+   * the tag index).
+   */
+  static class ControllerRemoveChecked extends Benchmark {
+    private String[] tags;
+    private ArrayList<Model> models;
+    private int[] visible;
+    private TitleIndex titles;
+    private int[] doomed;
+    private int[] removed;
+    private int count;
+
+    @Override
+    String getName() {
+      return("controller.removeChecked");
+    }
+
+    @Override
+    void setUp(int size) {
+      if (tags == null || tags.length != size) {
+        tags=buildTags(size);
+      }
+
+      models=buildModels(tags);
+      titles=new TitleIndex();
+      visible=new int[(size + 1) / 2];
+
+      for (int i=0; i < size; i++) {
+        titles.add(tags[i], models.get(i).title);
+      }
+
+      for (int i=0; i < visible.length; i++) {
+        visible[i]=i * 2;
+      }
+
+      doomed=new int[visible.length];
+      removed=new int[visible.length];
+      count=0;
+
+      for (int i=0; i < visible.length; i+=5) {
+        doomed[count]=i;
+        removed[count]=visible[i];
+        count++;
+      }
+    }
+
+    @Override
+    long run() {
+      ModelIndex index=new ModelIndex();
+
+      for (int i=0; i < count; i++) {
+        titles.remove(tags[removed[i]]);
+      }
+
+      PositionLists.removePositions(models, removed, count);
+
+      int[] result=
+          PositionLists.removeVisible(visible, doomed, removed, count);
+
+      return(result.length + index.positionOf(models, tags[1], 1));
+    }
+  }
+
+  /**
+   * MasterDetailController.findByTag(): size lookups against
+   * an already-built index.
+   */
+  static class ControllerFindByTag extends Benchmark {
+    private String[] tags;
+    private ArrayList<Model> models;
+    private ModelIndex index;
+
+    @Override
+    String getName() {
+      return("controller.findByTag");
+    }
+
+    @Override
+    void setUp(int size) {
+      if (tags == null || tags.length != size) {
+        tags=buildTags(size);
+        models=buildModels(tags);
+        index=new ModelIndex();
+        index.positionOf(models, tags[0], 0);
+      }
+    }
+
+    @Override
+    long run() {
+      long result=0;
+
+      for (int i=0; i < tags.length; i++) {
+        result+=index.positionOf(models, tags[i], 0);
+      }
+
+      return(result);
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(size);
+    }
+  }
+
+  /**
+   * MasterDetailController.update(): diff script for a
+   * snapshot with one removal, one insertion, and one move
+   * (FEW), or with every model moved, as the reverse
+   * (REVERSED, the worst case for moves) or a random
+   * permutation (SHUFFLED) of the current order.
+   */
+  static class ControllerUpdateDiff extends Benchmark {
+    static final String FEW="";
+    static final String REVERSED=".reversed";
+    static final String SHUFFLED=".shuffled";
+
+    private final String variant;
+    private String[] oldTags;
+    private String[] newTags;
+
+    ControllerUpdateDiff(String variant) {
+      this.variant=variant;
+    }
+
+    @Override
+    String getName() {
+      return("controller.update.diff" + variant);
+    }
+
+    @Override
+    void setUp(int size) {
+      if (oldTags == null || oldTags.length != size) {
+        oldTags=buildTags(size);
+
+        ArrayList<String> target=
+            new ArrayList<String>(Arrays.asList(oldTags));
+
+        if (variant == REVERSED) {
+          Collections.reverse(target);
+        }
+        else if (variant == SHUFFLED) {
+          Collections.shuffle(target, new Random(size));
+        }
+        else {
+          target.remove(size / 3);
+          target.add(size / 2, "inserted");
+          target.add(0, target.remove(size - 1));
+        }
+
+        newTags=target.toArray(new String[target.size()]);
+      }
+    }
+
+    @Override
+    long run() {
+      return(ModelDiff.compute(oldTags, newTags, null).size());
+    }
+  }
+
+  /**
+   * MasterDetailController.setFilter(): the title index
+   * queries for a search typed one character at a time,
+   * after every model has been removed and re-added (which
+   * would leave half the index dead, were it not
+   * compacted).
+   */
+  static class ControllerFilter extends Benchmark {
+    private static final String TYPED="note #12";
+
+    private String[] tags;
+    private TitleIndex titles;
+
+    @Override
+    String getName() {
+      return("controller.setFilter");
+    }
+
+    @Override
+    void setUp(int size) {
+      if (tags == null || tags.length != size) {
+        tags=buildTags(size);
+        titles=new TitleIndex();
+
+        for (int i=0; i < size; i++) {
+          titles.add(tags[i], "Note #" + i);
+        }
+
+        for (int i=0; i < size; i++) {
+          titles.remove(tags[i]);
+          titles.add(tags[i], "Note #" + i);
+        }
+      }
+    }
+
+    @Override
+    long run() {
+      long result=0;
+
+      for (int i=1; i <= TYPED.length(); i++) {
+        result+=titles.query(TYPED.substring(0, i)).length;
+      }
+
+      return(result);
+    }
+
+    @Override
+    int getOperations(int size) {
+      return(TYPED.length());
+    }
+  }
+}
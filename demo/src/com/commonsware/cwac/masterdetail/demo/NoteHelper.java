@@ -73,13 +73,7 @@ public class NoteHelper extends MasterDetailController<Note> {
   }
 
   public Note getNote(String key) {
-    for (Note note : getModelCollection()) {
-      if (key.equals(note.getKey())) {
-        return(note);
-      }
-    }
-
-    return(null);
+    return(findByTag(key));
   }
 
   static String buildKey() {
@@ -0,0 +1,519 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ModelStore kept in a single append-only file. Each
+ * write or delete appends a record; the latest record for
+ * a tag wins. The index of tags, titles, and where each
+ * model's bytes live is built by scanning the file once,
+ * skipping over the models themselves. When more than half
+ * of the file is superseded records, the file is rewritten
+ * with just the live ones.
+ * 
+ * read() does not wait on writes, nor on the file being
+ * rewritten: it holds its own lock, which writers only take
+ * briefly, to update the index or to swap in a rewritten
+ * file, and it reads through a read-only handle kept open
+ * for the purpose.
+ * 
+ * Subclass this and implement writeModel() and readModel()
+ * to convert your models to and from bytes.
+ * 
+ * @param <T>
+ *          the type of the model
+ */
+abstract public class FileModelStore<T> implements ModelStore<T> {
+  private static final byte PUT=1;
+  private static final byte DELETE=2;
+  private static final long MIN_GARBAGE_TO_COMPACT=64 * 1024;
+
+  private final File file;
+  private final Object readLock=new Object();
+  private volatile LinkedHashMap<String, Record> index=null;
+  private RandomAccessFile reader=null;
+  private long live=0;
+  private long garbage=0;
+
+  /**
+   * Writes a model's contents (but not its tag or title,
+   * which the store handles).
+   * 
+   * @param model
+   *          the model to write
+   * @param out
+   *          where to write it
+   * @throws IOException
+   */
+  abstract protected void writeModel(T model, DataOutputStream out)
+      throws IOException;
+
+  /**
+   * Reads a model written by writeModel().
+   * 
+   * @param in
+   *          where to read it from
+   * @return the model
+   * @throws IOException
+   */
+  abstract protected T readModel(DataInputStream in) throws IOException;
+
+  /**
+   * Constructor for a FileModelStore.
+   * 
+   * @param file
+   *          the file to keep the models in (e.g., in
+   *          getFilesDir()); it is created if need be
+   */
+  public FileModelStore(File file) {
+    this.file=file;
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see com.commonsware.cwac.masterdetail.ModelStore#readIndex()
+   */
+  @Override
+  public synchronized List<Stub> readIndex() throws IOException {
+    ensureIndex();
+
+    if (!file.exists()) {
+      return(null);
+    }
+
+    ArrayList<Stub> result=new ArrayList<Stub>(index.size());
+
+    for (Map.Entry<String, Record> entry : index.entrySet()) {
+      result.add(new Stub(entry.getKey(), entry.getValue().title));
+    }
+
+    return(result);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.ModelStore#read(java.lang
+   * .String)
+   */
+  @Override
+  public T read(String tag) throws IOException {
+    if (index == null) {
+      synchronized(this) {
+        ensureIndex();
+      }
+    }
+
+    byte[] payload;
+
+    // the index and the file it describes only change
+    // together under readLock, so the record and the bytes
+    // read here agree
+
+    synchronized(readLock) {
+      Record record=index.get(tag);
+
+      if (record == null) {
+        return(null);
+      }
+
+      if (reader == null) {
+        reader=new RandomAccessFile(file, "r");
+      }
+
+      payload=readPayload(reader, record);
+    }
+
+    return(readModel(new DataInputStream(new ByteArrayInputStream(payload))));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.ModelStore#write(java.lang
+   * .String, java.lang.String, java.lang.Object)
+   */
+  @Override
+  public synchronized void write(String tag, String title, T model)
+    throws IOException {
+    ensureIndex();
+
+    byte[] payload=toBytes(model);
+    ByteArrayOutputStream buffer=new ByteArrayOutputStream();
+    DataOutputStream out=new DataOutputStream(buffer);
+
+    out.writeByte(PUT);
+    out.writeUTF(tag);
+    out.writeUTF(title == null ? "" : title);
+    out.writeInt(payload.length);
+
+    int header=out.size();
+
+    out.write(payload);
+
+    long start=append(buffer.toByteArray());
+    Record old;
+
+    synchronized(readLock) {
+      old=index.put(tag, new Record(title, start + header, payload.length));
+    }
+
+    if (old != null) {
+      live-=old.length;
+      garbage+=old.length;
+    }
+
+    live+=payload.length;
+    compactIfNeeded();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.ModelStore#delete(java
+   * .lang.String)
+   */
+  @Override
+  public synchronized void delete(String tag) throws IOException {
+    ensureIndex();
+
+    Record old;
+
+    synchronized(readLock) {
+      old=index.remove(tag);
+    }
+
+    if (old != null) {
+      ByteArrayOutputStream buffer=new ByteArrayOutputStream();
+      DataOutputStream out=new DataOutputStream(buffer);
+
+      out.writeByte(DELETE);
+      out.writeUTF(tag);
+      append(buffer.toByteArray());
+      live-=old.length;
+      garbage+=old.length;
+      compactIfNeeded();
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.ModelStore#rewrite(java
+   * .lang.String[], java.lang.String[], java.util.List)
+   */
+  @Override
+  public synchronized void rewrite(String[] tags, String[] titles,
+                                   List<T> models) throws IOException {
+    ensureIndex();
+
+    File temp=new File(file.getPath() + ".tmp");
+    LinkedHashMap<String, Record> newIndex=
+        new LinkedHashMap<String, Record>(tags.length * 4 / 3 + 1);
+    RandomAccessFile old=(file.exists() ? new RandomAccessFile(file, "r")
+        : null);
+    DataOutputStream out=
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+    long offset=0;
+    long newLive=0;
+
+    try {
+      for (int i=0; i < tags.length; i++) {
+        T model=models.get(i);
+        byte[] payload;
+
+        if (model != null) {
+          payload=toBytes(model);
+        }
+        else {
+          Record record=index.get(tags[i]);
+
+          if (record == null || old == null) {
+            continue; // nothing to keep
+          }
+
+          payload=readPayload(old, record);
+        }
+
+        int before=out.size();
+
+        out.writeByte(PUT);
+        out.writeUTF(tags[i]);
+        out.writeUTF(titles[i] == null ? "" : titles[i]);
+        out.writeInt(payload.length);
+
+        long payloadOffset=offset + (out.size() - before);
+
+        out.write(payload);
+        offset+=out.size() - before;
+        newIndex.put(tags[i], new Record(titles[i], payloadOffset,
+                                         payload.length));
+        newLive+=payload.length;
+      }
+    }
+    finally {
+      out.close();
+
+      if (old != null) {
+        old.close();
+      }
+    }
+
+    synchronized(readLock) {
+      if (!temp.renameTo(file)) {
+        throw new IOException("Could not replace " + file);
+      }
+
+      index=newIndex;
+      closeReader(); // still open on the old file
+    }
+
+    live=newLive;
+    garbage=0;
+  }
+
+  private void ensureIndex() throws IOException {
+    if (index != null) {
+      return;
+    }
+
+    LinkedHashMap<String, Record> result=
+        new LinkedHashMap<String, Record>();
+
+    live=0;
+    garbage=0;
+
+    if (!file.exists()) {
+      index=result;
+
+      return;
+    }
+
+    CountingInputStream counter=
+        new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+    DataInputStream in=new DataInputStream(counter);
+    long good=0;
+
+    try {
+      while (true) {
+        int type=in.read();
+
+        if (type < 0) {
+          break;
+        }
+
+        String tag=in.readUTF();
+        Record old;
+
+        if (type == PUT) {
+          String title=in.readUTF();
+          int length=in.readInt();
+          long offset=counter.position;
+
+          skipFully(in, length);
+          old=result.put(tag, new Record(title, offset, length));
+          live+=length;
+        }
+        else if (type == DELETE) {
+          old=result.remove(tag);
+        }
+        else {
+          break; // garbage, presumably from a partial write
+        }
+
+        if (old != null) {
+          live-=old.length;
+          garbage+=old.length;
+        }
+
+        good=counter.position;
+      }
+    }
+    catch (EOFException e) {
+      // a partial record at the end, from a write that did
+      // not finish, so drop it below
+    }
+    finally {
+      in.close();
+    }
+
+    if (good < file.length()) {
+      RandomAccessFile raf=new RandomAccessFile(file, "rw");
+
+      try {
+        raf.setLength(good);
+      }
+      finally {
+        raf.close();
+      }
+    }
+
+    index=result;
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      RandomAccessFile old=reader;
+
+      reader=null;
+      old.close();
+    }
+  }
+
+  private long append(byte[] record) throws IOException {
+    RandomAccessFile raf=new RandomAccessFile(file, "rw");
+
+    try {
+      long start=raf.length();
+
+      raf.seek(start);
+      raf.write(record);
+
+      return(start);
+    }
+    finally {
+      raf.close();
+    }
+  }
+
+  private void compactIfNeeded() throws IOException {
+    if (garbage > MIN_GARBAGE_TO_COMPACT && garbage > live) {
+      String[] tags=new String[index.size()];
+      String[] titles=new String[tags.length];
+      ArrayList<T> models=new ArrayList<T>(tags.length);
+      int i=0;
+
+      for (Map.Entry<String, Record> entry : index.entrySet()) {
+        tags[i]=entry.getKey();
+        titles[i]=entry.getValue().title;
+        models.add(null);
+        i++;
+      }
+
+      rewrite(tags, titles, models);
+    }
+  }
+
+  private byte[] toBytes(T model) throws IOException {
+    ByteArrayOutputStream buffer=new ByteArrayOutputStream();
+    DataOutputStream out=new DataOutputStream(buffer);
+
+    writeModel(model, out);
+    out.flush();
+
+    return(buffer.toByteArray());
+  }
+
+  private static byte[] readPayload(RandomAccessFile raf, Record record)
+    throws IOException {
+    byte[] result=new byte[record.length];
+
+    raf.seek(record.offset);
+    raf.readFully(result);
+
+    return(result);
+  }
+
+  private static void skipFully(DataInputStream in, int length)
+    throws IOException {
+    int remaining=length;
+
+    while (remaining > 0) {
+      int skipped=in.skipBytes(remaining);
+
+      if (skipped <= 0) {
+        throw new EOFException();
+      }
+
+      remaining-=skipped;
+    }
+  }
+
+  private static class Record {
+    final String title;
+    final long offset;
+    final int length;
+
+    Record(String title, long offset, int length) {
+      this.title=title;
+      this.offset=offset;
+      this.length=length;
+    }
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+    long position=0;
+
+    CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int result=super.read();
+
+      if (result >= 0) {
+        position++;
+      }
+
+      return(result);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count)
+      throws IOException {
+      int result=super.read(buffer, offset, count);
+
+      if (result > 0) {
+        position+=result;
+      }
+
+      return(result);
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+      long result=super.skip(count);
+
+      position+=result;
+
+      return(result);
+    }
+  }
+}
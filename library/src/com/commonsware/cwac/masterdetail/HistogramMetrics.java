@@ -0,0 +1,175 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An implementation of MasterDetailMetrics that keeps a
+ * histogram of durations per step in memory, from which you
+ * can get percentiles, or a dump() suitable for showing on
+ * a debug screen or writing to Logcat. Histograms have a
+ * fixed size, with buckets accurate to within 12.5%, so
+ * memory use does not grow with the number of timings.
+ */
+public class HistogramMetrics implements MasterDetailMetrics {
+  private final LinkedHashMap<String, Histogram> histograms=
+      new LinkedHashMap<String, Histogram>();
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailMetrics
+   * #onTiming(java.lang.String, long)
+   */
+  @Override
+  public synchronized void onTiming(String step, long durationNanos) {
+    Histogram h=histograms.get(step);
+
+    if (h == null) {
+      h=new Histogram();
+      histograms.put(step, h);
+    }
+
+    h.record(durationNanos);
+  }
+
+  /**
+   * @param step
+   *          one of the step constants from
+   *          MasterDetailMetrics
+   * @return the number of timings recorded for this step
+   */
+  public synchronized long getCount(String step) {
+    Histogram h=histograms.get(step);
+
+    return(h == null ? 0 : h.count);
+  }
+
+  /**
+   * @param step
+   *          one of the step constants from
+   *          MasterDetailMetrics
+   * @param percentile
+   *          the desired percentile, from 0 to 100
+   * @return the approximate duration, in nanoseconds, that
+   *         this percentage of the timings for this step
+   *         fall at or below, or -1 if there are no timings
+   */
+  public synchronized long getPercentile(String step, double percentile) {
+    Histogram h=histograms.get(step);
+
+    return(h == null ? -1 : h.percentile(percentile));
+  }
+
+  /**
+   * Discards all recorded timings.
+   */
+  public synchronized void reset() {
+    histograms.clear();
+  }
+
+  /**
+   * @return a multi-line, human-readable summary of all
+   *         recorded timings, one line per step, in
+   *         milliseconds
+   */
+  public synchronized String dump() {
+    StringBuilder buf=new StringBuilder();
+
+    for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+      Histogram h=entry.getValue();
+
+      buf.append(String.format(Locale.US,
+                               "%s: n=%d mean=%.3f p50=%.3f p90=%.3f p99=%.3f max=%.3f ms%n",
+                               entry.getKey(), h.count,
+                               toMillis(h.total / h.count),
+                               toMillis(h.percentile(50)),
+                               toMillis(h.percentile(90)),
+                               toMillis(h.percentile(99)),
+                               toMillis(h.max)));
+    }
+
+    return(buf.toString());
+  }
+
+  private static double toMillis(long nanos) {
+    return(nanos / 1000000.0);
+  }
+
+  /**
+   * Log-linear histogram: values are grouped by their
+   * highest set bit, with each group split into eight
+   * equal-width buckets.
+   */
+  private static class Histogram {
+    private static final int SUB_BUCKETS=8;
+    private final long[] buckets=new long[64 * SUB_BUCKETS];
+    long count=0;
+    long total=0;
+    long max=0;
+
+    void record(long value) {
+      if (value < 0) {
+        value=0;
+      }
+
+      buckets[indexOf(value)]++;
+      count++;
+      total+=value;
+      max=Math.max(max, value);
+    }
+
+    long percentile(double percentile) {
+      long threshold=(long)Math.ceil(count * percentile / 100.0);
+      long seen=0;
+
+      for (int i=0; i < buckets.length; i++) {
+        seen+=buckets[i];
+
+        if (seen >= threshold && seen > 0) {
+          return(Math.min(max, midpointOf(i)));
+        }
+      }
+
+      return(max);
+    }
+
+    private static int indexOf(long value) {
+      if (value < SUB_BUCKETS) {
+        return((int)value);
+      }
+
+      int magnitude=63 - Long.numberOfLeadingZeros(value);
+      int sub=(int)(value >>> (magnitude - 3)) & (SUB_BUCKETS - 1);
+
+      return((magnitude - 2) * SUB_BUCKETS + sub);
+    }
+
+    private static long midpointOf(int index) {
+      if (index < SUB_BUCKETS) {
+        return(index);
+      }
+
+      int shift=index / SUB_BUCKETS - 1;
+      long low=(SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+
+      return(low + (1L << shift) / 2);
+    }
+  }
+}
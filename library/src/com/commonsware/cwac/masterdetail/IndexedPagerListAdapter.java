@@ -0,0 +1,337 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import android.support.v4.view.PagerAdapter;
+import android.widget.SectionIndexer;
+import java.util.Arrays;
+
+/**
+ * A PagerListAdapter that also implements SectionIndexer, so
+ * a fast-scrolling ListView can show sections. A section is
+ * a run of consecutive pages whose titles start with the
+ * same letter (with digits, punctuation, and the like
+ * lumped together as "#"), so for pages sorted by title,
+ * there is one section per letter. Unsorted pages may get
+ * one section per page, so only use this for sorted ones;
+ * MasterDetailController does so only with sortByTitle().
+ * 
+ * The adapter does not read titles itself. Instead, the
+ * index is supplied in full via setInitials() (typically
+ * computed on a background thread), then kept up to date
+ * via onAppended(), onInserted(), and onRemoved(), which
+ * only re-scan the runs next to the change. Until the first
+ * setInitials(), there are no sections.
+ */
+public class IndexedPagerListAdapter extends PagerListAdapter implements
+    SectionIndexer {
+  private static final String[] NO_SECTIONS=new String[0];
+
+  private char[] initials=null;
+  private int count=0;
+  private int[] runStarts=new int[0];
+  private String[] sections=NO_SECTIONS;
+
+  /**
+   * Constructor for an IndexedPagerListAdapter.
+   * 
+   * @param pages
+   *          the PagerAdapter to be converted into a
+   *          ListAdapter
+   * @param binder
+   *          the Assistant to create views for the list
+   */
+  public IndexedPagerListAdapter(PagerAdapter pages, Assistant binder) {
+    super(pages, binder);
+  }
+
+  /**
+   * @param title
+   *          a page title, possibly null
+   * @return the character identifying the section for this
+   *         title
+   */
+  public static char getInitial(CharSequence title) {
+    if (title != null) {
+      for (int i=0; i < title.length(); i++) {
+        char c=title.charAt(i);
+
+        if (Character.isLetter(c)) {
+          return(Character.toUpperCase(c));
+        }
+        else if (!Character.isWhitespace(c)) {
+          break;
+        }
+      }
+    }
+
+    return('#');
+  }
+
+  /**
+   * Replaces the whole index.
+   * 
+   * @param initials
+   *          the getInitial() value for each page, in order;
+   *          this array is retained, not copied
+   */
+  public void setInitials(char[] initials) {
+    this.initials=initials;
+    count=initials.length;
+    rebuildRuns();
+  }
+
+  /**
+   * @return true if setInitials() has been called, so the
+   *         index is usable
+   */
+  public boolean isIndexed() {
+    return(initials != null);
+  }
+
+  /**
+   * Call this after a page is added to the end.
+   * 
+   * @param initial
+   *          the getInitial() value for the new page
+   */
+  public void onAppended(char initial) {
+    if (initials == null) {
+      return;
+    }
+
+    ensureCapacity(count + 1);
+    initials[count++]=initial;
+
+    if (runStarts.length == 0 || initials[count - 2] != initial) {
+      runStarts=Arrays.copyOf(runStarts, runStarts.length + 1);
+      runStarts[runStarts.length - 1]=count - 1;
+      sections=Arrays.copyOf(sections, sections.length + 1);
+      sections[sections.length - 1]=String.valueOf(initial);
+    }
+  }
+
+  /**
+   * Call this after a page is inserted.
+   * 
+   * @param position
+   *          where the page was inserted
+   * @param initial
+   *          the getInitial() value for the new page
+   */
+  public void onInserted(int position, char initial) {
+    if (initials == null) {
+      return;
+    }
+
+    if (position == count) {
+      onAppended(initial);
+
+      return;
+    }
+
+    ensureCapacity(count + 1);
+    System.arraycopy(initials, position, initials, position + 1, count
+        - position);
+    initials[position]=initial;
+    count++;
+    spliceRuns(position, 1);
+  }
+
+  /**
+   * Call this after pages are removed.
+   * 
+   * @param positions
+   *          the positions the pages had before removal, in
+   *          ascending order
+   * @param removed
+   *          the number of positions in the array to use
+   */
+  public void onRemoved(int[] positions, int removed) {
+    if (initials == null || removed == 0) {
+      return;
+    }
+
+    if (removed == 1) {
+      int position=positions[0];
+
+      System.arraycopy(initials, position + 1, initials, position, count
+          - position - 1);
+      count--;
+      spliceRuns(position, -1);
+
+      return;
+    }
+
+    // the compaction is a full pass anyway, so the runs
+    // might as well be rebuilt
+
+    int next=0;
+    int kept=0;
+
+    for (int i=0; i < count; i++) {
+      if (next < removed && positions[next] == i) {
+        next++;
+      }
+      else {
+        initials[kept++]=initials[i];
+      }
+    }
+
+    count=kept;
+    rebuildRuns();
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see android.widget.SectionIndexer#getSections()
+   */
+  @Override
+  public Object[] getSections() {
+    return(sections);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * android.widget.SectionIndexer#getPositionForSection(int)
+   */
+  @Override
+  public int getPositionForSection(int section) {
+    if (runStarts.length == 0) {
+      return(0);
+    }
+
+    if (section < 0) {
+      return(0);
+    }
+
+    if (section >= runStarts.length) {
+      return(runStarts[runStarts.length - 1]);
+    }
+
+    return(runStarts[section]);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * android.widget.SectionIndexer#getSectionForPosition(int)
+   */
+  @Override
+  public int getSectionForPosition(int position) {
+    int result=Arrays.binarySearch(runStarts, position);
+
+    if (result < 0) {
+      result=-result - 2; // the run starting before this
+    }
+
+    return(Math.max(0, result));
+  }
+
+  private void ensureCapacity(int size) {
+    if (initials.length < size) {
+      initials=Arrays.copyOf(initials, Math.max(size, count * 3 / 2 + 1));
+    }
+  }
+
+  /**
+   * Fixes up the runs after one page was inserted or
+   * removed, re-scanning only from the start of the run
+   * before the change to the start of the first run that
+   * cannot have been affected, and shifting the runs after
+   * that.
+   * 
+   * @param position
+   *          where the page was inserted or removed
+   * @param delta
+   *          1 for an insertion, -1 for a removal
+   */
+  private void spliceRuns(int position, int delta) {
+    int before=0;
+
+    if (position > 0 && runStarts.length > 0) {
+      before=getSectionForPosition(position - 1);
+    }
+
+    int after=Arrays.binarySearch(runStarts, position + 2);
+
+    if (after < 0) {
+      after=-after - 1;
+    }
+
+    int start=(before < runStarts.length ? runStarts[before] : 0);
+    int end=(after < runStarts.length ? runStarts[after] + delta : count);
+    int runs=0;
+
+    for (int i=start; i < end; i++) {
+      if (i == start || initials[i] != initials[i - 1]) {
+        runs++;
+      }
+    }
+
+    int tail=runStarts.length - after;
+    int[] starts=new int[before + runs + tail];
+    String[] labels=new String[starts.length];
+    int run=before;
+
+    System.arraycopy(runStarts, 0, starts, 0, before);
+    System.arraycopy(sections, 0, labels, 0, before);
+
+    for (int i=start; i < end; i++) {
+      if (i == start || initials[i] != initials[i - 1]) {
+        starts[run]=i;
+        labels[run]=String.valueOf(initials[i]);
+        run++;
+      }
+    }
+
+    for (int i=0; i < tail; i++) {
+      starts[run + i]=runStarts[after + i] + delta;
+    }
+
+    System.arraycopy(sections, after, labels, run, tail);
+    runStarts=starts;
+    sections=labels;
+  }
+
+  private void rebuildRuns() {
+    int runs=0;
+
+    for (int i=0; i < count; i++) {
+      if (i == 0 || initials[i] != initials[i - 1]) {
+        runs++;
+      }
+    }
+
+    int[] starts=new int[runs];
+    String[] labels=new String[runs];
+    int run=0;
+
+    for (int i=0; i < count; i++) {
+      if (i == 0 || initials[i] != initials[i - 1]) {
+        starts[run]=i;
+        labels[run]=String.valueOf(initials[i]);
+        run++;
+      }
+    }
+
+    runStarts=starts;
+    sections=labels;
+  }
+}
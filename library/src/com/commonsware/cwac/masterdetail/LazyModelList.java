@@ -0,0 +1,582 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import android.util.Log;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * A model collection whose models need not all be in
+ * memory. Each entry knows its model's tag and title up
+ * front, but the model itself may be absent, to be loaded
+ * (via the Source, else from the ModelStore) on the next
+ * get(). Entries are shared between a list and its copy(),
+ * so a model loaded via a copy (e.g., on a background
+ * thread) is then loaded in the original as well.
+ * 
+ * Given a budget, the loaded models are kept to that total
+ * size, with the least-recently-used ones dropped first.
+ * Only models that can be loaded again are dropped: with a
+ * ModelStore, that means once they have been written to
+ * it; without one, the Source is relied upon to load any
+ * model.
+ * 
+ * Changes to the list are not written to the store by
+ * themselves; call the persist methods for that. Writes
+ * happen one at a time, in order, on a background thread.
+ * 
+ * If a model cannot be loaded (e.g., the store cannot be
+ * read), get() logs why and returns null, rather than
+ * throwing. To load a model without blocking the main
+ * application thread, run its loader() on a background
+ * thread.
+ * 
+ * Like ArrayList, this is only safe to change from one
+ * thread at a time, though get() on a copy is safe from
+ * any thread.
+ * 
+ * @param <T>
+ *          the type of the model
+ */
+final class LazyModelList<T> extends AbstractList<T> implements
+    RandomAccess {
+  /**
+   * Supplies what the list needs to know about models.
+   * These may be called on any thread.
+   */
+  interface Source<T> {
+    String getTag(T model);
+
+    String getTitle(T model);
+
+    /**
+     * @return the model with this tag, or null to read it
+     *         from the ModelStore
+     */
+    T load(String tag);
+
+    /**
+     * @return the size of this model, in the units of the
+     *         budget
+     */
+    int sizeOf(T model);
+  }
+
+  private static final Executor WRITER=
+      Executors.newSingleThreadExecutor();
+
+  private final ModelStore<T> store;
+  private final Residents<T> residents;
+  private final ArrayList<Entry<T>> entries;
+  private volatile Source<T> source;
+
+  /**
+   * Constructor for a LazyModelList with nothing loaded.
+   * 
+   * @param store
+   *          where the models live
+   * @param source
+   *          supplies tags and titles for added models
+   * @param stubs
+   *          the index of the store, from readIndex()
+   * @param budget
+   *          the most the loaded models may add up to (per
+   *          Source.sizeOf()), or 0 for no limit
+   */
+  LazyModelList(ModelStore<T> store, Source<T> source,
+                List<ModelStore.Stub> stubs, int budget) {
+    this(store, source, new ArrayList<Entry<T>>(stubs.size()),
+         budget > 0 ? new Residents<T>(budget) : null);
+
+    for (ModelStore.Stub stub : stubs) {
+      entries.add(new Entry<T>(stub.tag, stub.title, null));
+    }
+  }
+
+  private LazyModelList(ModelStore<T> store, Source<T> source,
+                        ArrayList<Entry<T>> entries,
+                        Residents<T> residents) {
+    this.store=store;
+    this.source=source;
+    this.entries=entries;
+    this.residents=residents;
+  }
+
+  /**
+   * @param store
+   *          where the models are to live, or null if the
+   *          source can load any model
+   * @param source
+   *          supplies tags and titles for the models
+   * @param models
+   *          the models, which are not yet in the store
+   * @param budget
+   *          the most the loaded models may add up to (per
+   *          Source.sizeOf()), or 0 for no limit
+   * @return a LazyModelList with all the models loaded
+   *         (budget permitting)
+   */
+  static <T> LazyModelList<T> wrap(ModelStore<T> store, Source<T> source,
+                                   List<T> models, int budget) {
+    LazyModelList<T> result=
+        new LazyModelList<T>(store, source,
+                             new ArrayList<Entry<T>>(models.size()),
+                             budget > 0 ? new Residents<T>(budget) : null);
+
+    for (T model : models) {
+      result.entries.add(result.newEntry(model));
+    }
+
+    return(result);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.util.AbstractList#get(int)
+   */
+  @Override
+  public T get(int position) {
+    return(load(entries.get(position)));
+  }
+
+  /**
+   * @return a task that returns the model at this position,
+   *         loading it if need be, as get() would; the task
+   *         is safe to run on any thread, even as this list
+   *         changes
+   */
+  Callable<T> loader(int position) {
+    final Entry<T> entry=entries.get(position);
+
+    return(new Callable<T>() {
+      @Override
+      public T call() {
+        return(load(entry));
+      }
+    });
+  }
+
+  private T load(Entry<T> entry) {
+    // concurrent loads of one entry wait on the first,
+    // rather than reading the model twice
+
+    synchronized(entry) {
+      T result=entry.model;
+
+      if (result == null) {
+        result=source.load(entry.tag);
+
+        if (result == null && store != null) {
+          try {
+            result=store.read(entry.tag);
+          }
+          catch (IOException e) {
+            Log.e(LazyModelList.class.getSimpleName(),
+                  "Exception reading model " + entry.tag, e);
+
+            return(null);
+          }
+        }
+
+        if (result == null) {
+          Log.e(LazyModelList.class.getSimpleName(),
+                "No model available for " + entry.tag);
+
+          return(null);
+        }
+
+        entry.model=result;
+        entry.reloadable=true;
+
+        if (residents != null) {
+          residents.add(entry, source.sizeOf(result));
+        }
+      }
+      else if (residents != null) {
+        residents.touch(entry);
+      }
+
+      return(result);
+    }
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.util.AbstractCollection#size()
+   */
+  @Override
+  public int size() {
+    return(entries.size());
+  }
+
+  /**
+   * Replaces a model. Unlike a normal List, this returns
+   * the old model only if it was loaded.
+   * 
+   * @see java.util.AbstractList#set(int, java.lang.Object)
+   */
+  @Override
+  public T set(int position, T model) {
+    Entry<T> old=entries.set(position, newEntry(model));
+
+    forget(old);
+
+    return(old.model);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.util.AbstractList#add(int, java.lang.Object)
+   */
+  @Override
+  public void add(int position, T model) {
+    entries.add(position, newEntry(model));
+    modCount++;
+  }
+
+  /**
+   * Removes a model. Unlike a normal List, this returns the
+   * removed model only if it was loaded.
+   * 
+   * @see java.util.AbstractList#remove(int)
+   */
+  @Override
+  public T remove(int position) {
+    Entry<T> old=entries.remove(position);
+
+    modCount++;
+    forget(old);
+
+    return(old.model);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see java.util.AbstractList#removeRange(int, int)
+   */
+  @Override
+  protected void removeRange(int from, int to) {
+    List<Entry<T>> doomed=entries.subList(from, to);
+
+    for (Entry<T> entry : doomed) {
+      forget(entry);
+    }
+
+    doomed.clear();
+    modCount++;
+  }
+
+  /**
+   * Replaces the Source, such as when the one that created
+   * this list is going away (e.g., a configuration change).
+   */
+  void setSource(Source<T> source) {
+    this.source=source;
+  }
+
+  /**
+   * @return the model at this position if it is loaded,
+   *         else null
+   */
+  T peek(int position) {
+    return(entries.get(position).model);
+  }
+
+  /**
+   * @return the tag of the model at this position
+   */
+  String getTag(int position) {
+    return(entries.get(position).tag);
+  }
+
+  /**
+   * @return the title of the model at this position, as of
+   *         when it was stored or added
+   */
+  String getTitle(int position) {
+    return(entries.get(position).title);
+  }
+
+  /**
+   * @return a copy of this list, sharing its entries, for
+   *         use on a background thread
+   */
+  LazyModelList<T> copy() {
+    return(new LazyModelList<T>(store, source,
+                                new ArrayList<Entry<T>>(entries),
+                                residents));
+  }
+
+  /**
+   * Moves a model, without loading it.
+   * 
+   * @param from
+   *          the model's current position
+   * @param to
+   *          the model's position after the move
+   */
+  void move(int from, int to) {
+    entries.add(to, entries.remove(from));
+    modCount++;
+  }
+
+  /**
+   * Rearranges the models, without loading them.
+   * 
+   * @param order
+   *          for each new position, the old position of the
+   *          model to go there
+   */
+  void permute(int[] order) {
+    ArrayList<Entry<T>> old=new ArrayList<Entry<T>>(entries);
+
+    for (int i=0; i < order.length; i++) {
+      entries.set(i, old.get(order[i]));
+    }
+
+    modCount++;
+  }
+
+  /**
+   * Removes the models at the given positions, without
+   * loading them.
+   * 
+   * @param doomed
+   *          the positions to remove, in ascending order
+   * @param count
+   *          the number of positions in doomed to use
+   */
+  void removePositions(int[] doomed, int count) {
+    for (int i=0; i < count; i++) {
+      forget(entries.get(doomed[i]));
+    }
+
+    PositionLists.removePositions(entries, doomed, count);
+    modCount++;
+  }
+
+  /**
+   * Writes the model at this position to the store, in the
+   * background.
+   */
+  void persist(int position) {
+    final Entry<T> entry=entries.get(position);
+    final String title=entry.title;
+    final T model=entry.model;
+
+    if (store == null || model == null) {
+      return; // nowhere to write, or not loaded, so not changed
+    }
+
+    WRITER.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          store.write(entry.tag, title, model);
+          onStored(entry);
+        }
+        catch (IOException e) {
+          Log.e(LazyModelList.class.getSimpleName(),
+                "Exception writing model", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Deletes models from the store, in the background.
+   * 
+   * @param tags
+   *          the tags of the models to delete
+   */
+  void persistRemoval(final List<String> tags) {
+    if (store == null || tags.isEmpty()) {
+      return;
+    }
+
+    WRITER.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (String tag : tags) {
+            store.delete(tag);
+          }
+        }
+        catch (IOException e) {
+          Log.e(LazyModelList.class.getSimpleName(),
+                "Exception deleting model", e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Replaces the contents of the store with the contents of
+   * this list, in the background. Models that are not
+   * loaded are copied over from what is already stored.
+   */
+  void persistAll() {
+    if (store == null) {
+      return;
+    }
+
+    final ArrayList<Entry<T>> written=new ArrayList<Entry<T>>(entries);
+    final String[] tags=new String[written.size()];
+    final String[] titles=new String[tags.length];
+    final ArrayList<T> models=new ArrayList<T>(tags.length);
+
+    for (int i=0; i < tags.length; i++) {
+      Entry<T> entry=written.get(i);
+
+      tags[i]=entry.tag;
+      titles[i]=entry.title;
+      models.add(entry.model);
+    }
+
+    WRITER.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          store.rewrite(tags, titles, models);
+
+          for (Entry<T> entry : written) {
+            onStored(entry);
+          }
+        }
+        catch (IOException e) {
+          Log.e(LazyModelList.class.getSimpleName(),
+                "Exception rewriting model store", e);
+        }
+      }
+    });
+  }
+
+  private Entry<T> newEntry(T model) {
+    Entry<T> result=
+        new Entry<T>(source.getTag(model), source.getTitle(model), model);
+
+    // without a store, the source has to be able to load
+    // anything; with one, wait until the model is written
+
+    result.reloadable=(store == null);
+
+    if (residents != null) {
+      residents.add(result, source.sizeOf(model));
+    }
+
+    return(result);
+  }
+
+  private void onStored(Entry<T> entry) {
+    if (!entry.reloadable) {
+      entry.reloadable=true;
+
+      if (residents != null) {
+        residents.trim();
+      }
+    }
+  }
+
+  private void forget(Entry<T> entry) {
+    if (residents != null) {
+      residents.remove(entry);
+    }
+  }
+
+  private static class Entry<T> {
+    final String tag;
+    final String title;
+    volatile T model;
+    volatile boolean reloadable=false;
+
+    Entry(String tag, String title, T model) {
+      this.tag=tag;
+      this.title=title;
+      this.model=model;
+    }
+  }
+
+  /**
+   * The loaded models, in least-recently-used order, with
+   * their sizes, shared by a list and its copies.
+   */
+  private static class Residents<T> {
+    private final LinkedHashMap<Entry<T>, Integer> sizes=
+        new LinkedHashMap<Entry<T>, Integer>(16, 0.75f, true);
+    private final int budget;
+    private int total=0;
+
+    Residents(int budget) {
+      this.budget=budget;
+    }
+
+    synchronized void add(Entry<T> entry, int size) {
+      Integer old=sizes.put(entry, size);
+
+      if (old != null) {
+        total-=old;
+      }
+
+      total+=size;
+      trim();
+    }
+
+    synchronized void touch(Entry<T> entry) {
+      sizes.get(entry); // moves it to the most-recent end
+    }
+
+    synchronized void remove(Entry<T> entry) {
+      Integer old=sizes.remove(entry);
+
+      if (old != null) {
+        total-=old;
+      }
+    }
+
+    /**
+     * Drops the least-recently-used models that can be
+     * loaded again, until the rest fit the budget.
+     */
+    synchronized void trim() {
+      Iterator<Map.Entry<Entry<T>, Integer>> it=
+          sizes.entrySet().iterator();
+
+      while (total > budget && it.hasNext()) {
+        Map.Entry<Entry<T>, Integer> eldest=it.next();
+        Entry<T> entry=eldest.getKey();
+
+        if (entry.reloadable) {
+          entry.model=null;
+          total-=eldest.getValue();
+          it.remove();
+        }
+      }
+    }
+  }
+}
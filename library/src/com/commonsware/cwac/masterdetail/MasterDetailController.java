@@ -17,13 +17,26 @@ package com.commonsware.cwac.masterdetail;
 import android.app.Fragment;
 import android.app.FragmentManager;
 import android.support.v4.view.PagerAdapter;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
 import android.util.SparseBooleanArray;
 import android.view.ActionMode;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.widget.ListAdapter;
+import java.io.IOException;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import com.commonsware.cwac.pager.ArrayPagerAdapter;
 import com.commonsware.cwac.pager.PageDescriptor;
 import com.commonsware.cwac.pager.SimplePageDescriptor;
@@ -42,6 +55,10 @@ import com.commonsware.cwac.pager.SimplePageDescriptor;
  */
 abstract public class MasterDetailController<T> extends
     MasterDetailHelper<List<T>> {
+  private static final int TITLE_CACHE_SIZE=512;
+  private static final int SORT_KEY_CACHE_SIZE=1024;
+  private static final int TITLE_PREFETCH=32;
+
   /**
    * Given a model, returns a unique identifying tag for
    * this model. This tag will be used to identify the
@@ -98,6 +115,156 @@ abstract public class MasterDetailController<T> extends
    */
   abstract protected void removeModel(T model);
 
+  /**
+   * Called when the user removes several models at once
+   * (e.g., via the action mode). The default implementation
+   * calls removeModel() for each model. Override this if
+   * your backing store can remove a batch more cheaply than
+   * one at a time (e.g., a single database transaction).
+   * As with removeModel(), you do not need to remove the
+   * models from the model collection.
+   * 
+   * @param models
+   *          the model objects to be removed from existence,
+   *          in the order they appeared in the collection
+   */
+  protected void removeModels(List<T> models) {
+    for (T model : models) {
+      removeModel(model);
+    }
+  }
+
+  /**
+   * Called when the user removes several models at once,
+   * before removeModels(). With a ModelStore or
+   * modelCacheSize(), some of the models may not be in
+   * memory, and removeModels() needs them all to be loaded,
+   * on the main application thread. Override this and
+   * return true if you can remove the models knowing just
+   * their tags, and removeModels() is not called.
+   * 
+   * @param tags
+   *          the tags of the models to be removed from
+   *          existence, in the order they appeared in the
+   *          collection
+   * @return true if the models were handled here, false
+   *         (the default) to have removeModels() called
+   */
+  protected boolean removeModelsByTag(List<String> tags) {
+    return(false);
+  }
+
+  /**
+   * Override this to have the controller persist the model
+   * collection for you. When the store has contents, the
+   * model collection is restored from it, and
+   * buildModelCollection() is not called. The master is
+   * filled from the tags and titles in the store's index,
+   * and each model is only read from the store when it is
+   * first needed (e.g., for its detail). Otherwise, the
+   * collection from buildModelCollection() is written to
+   * the store.
+   * 
+   * After that, adds, removals, and update() are written to
+   * the store on a background thread. Call onModelChanged()
+   * after changing a model in place. Note that
+   * getModelCollection() then returns a List of the
+   * controller's own, not the one you built.
+   * 
+   * This is called wherever buildModelCollection() would
+   * be, which may be a background thread.
+   * 
+   * @return the store for the model collection, or null to
+   *         not persist it (the default)
+   */
+  protected ModelStore<T> buildModelStore() {
+    return(null);
+  }
+
+  /**
+   * If you call modelCacheSize() on your options, models
+   * may be dropped from memory, leaving just their tags and
+   * titles for the master. This is called (possibly on a
+   * background thread) to get a dropped model back, such as
+   * when its detail is shown. Return null to have it read
+   * from your ModelStore instead; if you have no ModelStore,
+   * you need to override this (and canLoadModel()).
+   * 
+   * @param tag
+   *          the tag of the model to load
+   * @return the model, or null
+   */
+  protected T loadModel(String tag) {
+    return(null);
+  }
+
+  /**
+   * If you call modelCacheSize() on your options but have no
+   * ModelStore, override this to return true, to confirm
+   * that loadModel() can get any model back. Otherwise,
+   * loading the model collection fails with an
+   * IllegalStateException, as models dropped from memory
+   * would be lost.
+   * 
+   * @return true if loadModel() can load any model, false
+   *         (the default) otherwise
+   */
+  protected boolean canLoadModel() {
+    return(false);
+  }
+
+  /**
+   * If you call modelCacheSize() on your options, this
+   * returns the size of a model, in whatever units you used
+   * for the cache size (e.g., an estimate of the bytes the
+   * model takes up). The default is 1, so the cache size is
+   * a number of models. This may be called on a background
+   * thread.
+   * 
+   * @param model
+   *          the model to measure
+   * @return the size of the model
+   */
+  protected int sizeOfModel(T model) {
+    return(1);
+  }
+
+  /**
+   * Called by update(), on a background thread, for a model
+   * whose tag is in both the model collection and the
+   * snapshot (and whose title is the same in both), to tell
+   * whether the snapshot's model replaces it with changed
+   * contents. A changed model has its detail refreshed and,
+   * with a ModelStore, is written to it. The default uses
+   * equals(), so implement that on your model class;
+   * otherwise, a snapshot of freshly-built models counts as
+   * all changed.
+   * 
+   * @param old
+   *          the model in the collection
+   * @param updated
+   *          the model with the same tag in the snapshot
+   * @return true if the model changed
+   */
+  protected boolean isModelChanged(T old, T updated) {
+    return(!old.equals(updated));
+  }
+
+  /**
+   * Called on the main application thread when a model
+   * asked for via requestModel() has been loaded in the
+   * background. Override this to fill in whatever was
+   * waiting on the model (e.g., its detail fragment).
+   * 
+   * @param tag
+   *          the tag of the model
+   * @param model
+   *          the model
+   */
+  protected void onModelLoaded(String tag, T model) {
+    // no-op by default
+  }
+
   /**
    * Constructor for a MasterDetailController
    * 
@@ -109,6 +276,112 @@ abstract public class MasterDetailController<T> extends
     super(options);
   }
 
+  private TagIndex<T> tagIndex=new TagIndex<T>() {
+    @Override
+    String getTag(T model) {
+      return(getModelTag(model));
+    }
+
+    @Override
+    String getTagAt(List<T> models, int position) {
+      return(tagAt(models, position));
+    }
+  };
+  private final LazyModelList.Source<T> source=
+      new LazyModelList.Source<T>() {
+        @Override
+        public String getTag(T model) {
+          return(getModelTag(model));
+        }
+
+        @Override
+        public String getTitle(T model) {
+          return(getModelTitle(model));
+        }
+
+        @Override
+        public T load(String tag) {
+          return(loadModel(tag));
+        }
+
+        @Override
+        public int sizeOf(T model) {
+          return(sizeOfModel(model));
+        }
+      };
+  private int modCount=0;
+  private final LruCache<String, CharSequence> titleCache=
+      new LruCache<String, CharSequence>(TITLE_CACHE_SIZE);
+  private int titleGeneration=0;
+  private int lastTitlePosition=-1;
+  private boolean titlePrefetchPending=false;
+  private TitleIndex titleIndex=null;
+  private TagPositions filterBase=null;
+  private String filter=null;
+  private int filterGeneration=0;
+  private int[] visiblePositions=null;
+  private final Collator collator=Collator.getInstance();
+  private final LruCache<String, CollationKey> sortKeys=
+      new LruCache<String, CollationKey>(SORT_KEY_CACHE_SIZE);
+  private final HashSet<String> pendingLoads=new HashSet<String>();
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #loadModelCollection()
+   */
+  @Override
+  List<T> loadModelCollection() {
+    ModelStore<T> store=buildModelStore();
+    int budget=getModelCacheSize();
+
+    if (store == null && budget <= 0) {
+      return(sortLoaded(super.loadModelCollection()));
+    }
+
+    // with a budget but no store, a model dropped from
+    // memory can only come back via loadModel()
+
+    if (store == null && !canLoadModel()) {
+      throw new IllegalStateException("modelCacheSize() requires a ModelStore, "
+          + "or loadModel() and canLoadModel()");
+    }
+
+    if (store != null) {
+      try {
+        List<ModelStore.Stub> stubs=store.readIndex();
+
+        if (stubs != null) {
+          return(sortLoaded(new LazyModelList<T>(store, source, stubs,
+                                                 budget)));
+        }
+      }
+      catch (IOException e) {
+        Log.e(MasterDetailController.class.getSimpleName(),
+              "Exception reading model store", e);
+      }
+    }
+
+    // nothing stored (or nothing readable), so start over
+    // from buildModelCollection()
+
+    List<T> models=super.loadModelCollection();
+
+    if (models == null) {
+      return(null);
+    }
+
+    LazyModelList<T> result=
+        LazyModelList.wrap(store, source, models, budget);
+
+    sortLoaded(result);
+    result.persistAll();
+
+    return(result);
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -117,18 +390,87 @@ abstract public class MasterDetailController<T> extends
    * #buildPagerAdapter(android.app.FragmentManager)
    */
   @Override
+  @SuppressWarnings("unchecked")
   protected PagerAdapter buildPagerAdapter(FragmentManager fm) {
     ArrayList<PageDescriptor> pages=new ArrayList<PageDescriptor>();
     List<T> model=getModelCollection();
 
+    if (model instanceof LazyModelList) {
+      // the collection outlives the controller that loaded
+      // it, so point it at this one
+
+      ((LazyModelList<T>)model).setSource(source);
+    }
+
     for (int i=0; i < model.size(); i++) {
-      pages.add(new SimplePageDescriptor(getModelTag(model.get(i)),
-                                         getModelTitle(model.get(i))));
+      pages.add(new SimplePageDescriptor(tagAt(model, i), titleAt(model, i)));
     }
 
+    visiblePositions=null;
+
     return(new ModelPagerAdapter(getFragmentManager(), pages));
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #buildListAdapter()
+   */
+  @Override
+  protected ListAdapter buildListAdapter() {
+    if (!isSortedByTitle()) {
+      // in supplied order, initials come in short runs, and
+      // the fast-scroller would show one section per run
+
+      return(super.buildListAdapter());
+    }
+
+    IndexedPagerListAdapter result=
+        new IndexedPagerListAdapter(getPagerAdapter(), this);
+
+    buildSectionIndex(result);
+
+    return(result);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #getItemTag(int)
+   */
+  @Override
+  protected String getItemTag(int position) {
+    return(tagAt(getModelCollection(), toModelPosition(position)));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #getPositionForTag(java.lang.String)
+   */
+  @Override
+  protected int getPositionForTag(String tag) {
+    return(toVisiblePosition(positionOfTag(tag)));
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #hasStableIds()
+   */
+  @Override
+  public boolean hasStableIds() {
+    return(true);
+  }
+
   /**
    * Override this to provide a title for this model object.
    * This will be used, by default, for the contents of the
@@ -136,6 +478,12 @@ abstract public class MasterDetailController<T> extends
    * calls toString() on the model object, so you are
    * welcome to override that instead if you prefer
    * 
+   * Titles are cached by tag, and titles for rows just
+   * ahead of the scroll position are computed in advance on
+   * a background thread, so this needs to be safe to call
+   * from one. If you change a model in place, call
+   * onModelChanged() so its cached title is dropped.
+   * 
    * @param model
    *          the model whose title we need
    * @return the title of the model
@@ -170,6 +518,10 @@ abstract public class MasterDetailController<T> extends
   @Override
   public void onItemCheckedStateChanged(ActionMode mode, int position,
                                         long id, boolean checked) {
+    if (restoringSelection) {
+      return; // we will be called once the restore is done
+    }
+
     updateActionModeTitle(mode);
 
     super.onItemCheckedStateChanged(mode, position, id, checked);
@@ -199,7 +551,10 @@ abstract public class MasterDetailController<T> extends
    */
   public boolean onOptionsItemSelected(MenuItem item) {
     if (item.getItemId() == getAddMenuId()) {
-      add();
+      if (isModelCollectionLoaded()) {
+        add();
+      }
+
       return(true);
     }
 
@@ -223,6 +578,148 @@ abstract public class MasterDetailController<T> extends
     return(super.onActionItemClicked(mode, item));
   }
 
+  /**
+   * Returns the model in the model collection whose tag
+   * (from getModelTag()) matches the supplied one. This
+   * uses an index maintained by the controller, so it is
+   * cheap even for large collections (though, with a
+   * ModelStore or modelCacheSize(), the model itself may
+   * need to be loaded, on this thread; see requestModel()
+   * to avoid that).
+   * 
+   * @param tag
+   *          the tag of the model to find
+   * @return the matching model, or null if there is none
+   *         (or it could not be loaded)
+   */
+  public T findByTag(String tag) {
+    int position=positionOfTag(tag);
+
+    if (position < 0) {
+      return(null);
+    }
+
+    return(getModelCollection().get(position));
+  }
+
+  /**
+   * Like findByTag(), but never loads the model on the main
+   * application thread. If the model is in memory, it is
+   * returned. Otherwise, this returns null, and the model
+   * is loaded in the background and handed to
+   * onModelLoaded().
+   * 
+   * @param tag
+   *          the tag of the model to find
+   * @return the matching model, or null if there is none
+   *         or it is being loaded
+   */
+  @SuppressWarnings("unchecked")
+  public T requestModel(final String tag) {
+    int position=positionOfTag(tag);
+
+    if (position < 0) {
+      return(null);
+    }
+
+    List<T> models=getModelCollection();
+
+    if (!(models instanceof LazyModelList)) {
+      return(models.get(position));
+    }
+
+    LazyModelList<T> lazy=(LazyModelList<T>)models;
+    T result=lazy.peek(position);
+
+    if (result == null && pendingLoads.add(tag)) {
+      final Callable<T> loader=lazy.loader(position);
+
+      getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          T loaded=null;
+
+          try {
+            loaded=loader.call();
+          }
+          catch (Exception e) {
+            Log.e(MasterDetailController.class.getSimpleName(),
+                  "Exception loading model " + tag, e);
+          }
+
+          final T model=loaded;
+
+          runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+              pendingLoads.remove(tag);
+
+              if (model != null) {
+                onModelLoaded(tag, model);
+              }
+            }
+          });
+        }
+      });
+    }
+
+    return(result);
+  }
+
+  /**
+   * Returns the position within the model collection of
+   * the model whose tag (from getModelTag()) matches the
+   * supplied one.
+   * 
+   * @param tag
+   *          the tag of the model to find
+   * @return the position of the matching model, or -1 if
+   *         there is none
+   */
+  public int positionOfTag(String tag) {
+    return(tagIndex.positionOf(getModelCollection(), tag, modCount));
+  }
+
+  /**
+   * Call this after changing a model in place (e.g., from
+   * its detail fragment), or to replace a model with a new
+   * one having the same tag. The model's row in the master
+   * is refreshed, and, if you have a ModelStore, the model
+   * is written to it in the background. The model's
+   * position is left alone, even if the collection is
+   * sorted by title; use update() to re-sort.
+   * 
+   * @param model
+   *          the changed model
+   */
+  @SuppressWarnings("unchecked")
+  public void onModelChanged(T model) {
+    String tag=getModelTag(model);
+    int position=positionOfTag(tag);
+
+    if (position < 0) {
+      return;
+    }
+
+    List<T> models=getModelCollection();
+    String title=getModelTitle(model);
+
+    models.set(position, model);
+
+    if (models instanceof LazyModelList) {
+      ((LazyModelList<T>)models).persist(position);
+    }
+
+    titleCache.remove(tag);
+    sortKeys.remove(tag);
+
+    if (titleIndex != null) {
+      titleIndex.add(tag, title);
+    }
+
+    rebindVisibleRows();
+  }
+
   /**
    * @return the title to go in the action mode when we are
    *         in multiple-choice mode and the action mode is
@@ -244,22 +741,71 @@ abstract public class MasterDetailController<T> extends
   @SuppressWarnings("unchecked")
   void add() {
     T model=createNewModel();
+    String title=getModelTitle(model);
+    List<T> models=getModelCollection();
 
     SimplePageDescriptor desc=
-        new SimplePageDescriptor(getModelTag(model),
-                                 getModelTitle(model));
+        new SimplePageDescriptor(getModelTag(model), title);
+    int modelPosition=models.size();
 
-    getModelCollection().add(model);
-    ((ModelPagerAdapter)getPagerAdapter()).add(desc);
+    if (isSortedByTitle()) {
+      modelPosition=findInsertionPoint(getSortKey(model));
+    }
+
+    models.add(modelPosition, model);
+    noteChangedTags(Collections.singleton(desc.getFragmentTag()));
+
+    if (models instanceof LazyModelList) {
+      ((LazyModelList<T>)models).persist(modelPosition);
+    }
+
+    // a new model is shown even if it does not match the
+    // filter, so the user can fill it in
+
+    int position=modelPosition;
+
+    if (visiblePositions != null) {
+      visiblePositions=
+          PositionLists.insertVisible(visiblePositions, modelPosition);
+      position=toVisiblePosition(modelPosition);
+    }
+
+    if (titleIndex != null) {
+      titleIndex.add(desc.getFragmentTag(), title);
+    }
+
+    IndexedPagerListAdapter index=getSectionIndex();
+
+    if (index != null) {
+      index.onInserted(position, IndexedPagerListAdapter.getInitial(title));
+    }
+
+    ModelPagerAdapter adapter=(ModelPagerAdapter)getPagerAdapter();
+
+    if (position == adapter.getCount()) {
+      adapter.add(desc);
+    }
+    else {
+      adapter.insert(desc, position);
+    }
+
+    modCount++;
+
+    if (modelPosition == models.size() - 1) {
+      tagIndex.onAppended(models, modCount);
+    }
+    else {
+      invalidateTagIndex();
+    }
 
-    final int position=getModelCollection().size() - 1;
+    final int shown=position;
 
-    setActivatedItem(position);
+    setActivatedItem(shown);
 
     getListView().post(new Runnable() {
       @Override
       public void run() {
-        onDetailSelected(position);
+        onDetailSelected(shown);
       }
     });
   }
@@ -267,77 +813,1246 @@ abstract public class MasterDetailController<T> extends
   @SuppressWarnings("unchecked")
   void removeChecked() {
     SparseBooleanArray checked=getListView().getCheckedItemPositions();
+    List<T> models=getModelCollection();
+    int[] positions=new int[checked.size()];
+    int count=0;
 
-    ArrayList<Integer> positions=new ArrayList<Integer>();
+    // keys of a SparseBooleanArray are in ascending order
 
     for (int i=0; i < checked.size(); i++) {
-      if (checked.valueAt(i)) {
-        positions.add(checked.keyAt(i));
+      if (checked.valueAt(i)
+          && checked.keyAt(i) < getPagerAdapter().getCount()) {
+        positions[count++]=checked.keyAt(i);
       }
     }
 
-    Collections.sort(positions, Collections.reverseOrder());
+    // positions are in the master, which may be filtered;
+    // modelPositions are in the model collection, and are
+    // also ascending, as visiblePositions is
+
+    int[] modelPositions=new int[count];
+    ArrayList<String> removedTags=new ArrayList<String>(count);
 
-    for (int position : positions) {
-      removeModel(getModelCollection().get(position));
-      getModelCollection().remove(position);
-      ((ModelPagerAdapter)getPagerAdapter()).remove(position);
+    for (int i=0; i < count; i++) {
+      modelPositions[i]=toModelPosition(positions[i]);
+      removedTags.add(tagAt(models, modelPositions[i]));
     }
 
-    getListView().clearChoices();
-    ((ModelPagerAdapter)getPagerAdapter()).notifyDataSetChanged();
-  }
+    noteChangedTags(removedTags);
 
-  void updateActionModeTitle(ActionMode mode) {
-    mode.setTitle(getActionModeTitle());
-    mode.setSubtitle(getActionModeSubtitle());
-  }
+    // only get the models themselves (which may mean
+    // loading them) if they are wanted
 
-  /**
-   * @return a menu resource (e.g.,
-   *         R.menu.something_or_another) that will be
-   *         inflated into the action bar
-   */
-  private int getOptionsMenuResource() {
-    return(((MasterDetailController.Options)options).optionsMenuResource);
-  }
+    if (count > 0 && !removeModelsByTag(removedTags)) {
+      ArrayList<T> removed=new ArrayList<T>(count);
 
-  /**
-   * @return the ID of a menu item (e.g., R.id.add) that
-   *         represents the "add" operation
-   */
-  private int getAddMenuId() {
-    return(((MasterDetailController.Options)options).addMenuId);
-  }
+      for (int i=0; i < count; i++) {
+        removed.add(models.get(modelPositions[i]));
+      }
 
-  /**
-   * @return the ID of a menu item (e.g., R.id.remove) that
-   *         represents the "remove" operation
-   */
-  private int getRemoveMenuId() {
-    return(((MasterDetailController.Options)options).removeMenuId);
-  }
+      removeModels(removed);
+    }
 
-  class ModelPagerAdapter extends ArrayPagerAdapter<Fragment> {
-    public ModelPagerAdapter(FragmentManager fragmentManager,
-                             ArrayList<PageDescriptor> descriptors) {
-      super(fragmentManager, descriptors);
+    if (models instanceof LazyModelList) {
+      LazyModelList<T> lazy=(LazyModelList<T>)models;
+
+      lazy.removePositions(modelPositions, count);
+      lazy.persistRemoval(removedTags);
+    }
+    else {
+      PositionLists.removePositions(models, modelPositions, count);
     }
 
-    @Override
-    protected Fragment createFragment(PageDescriptor desc) {
-      return(buildFragmentForTag(desc.getFragmentTag()));
+    if (visiblePositions != null) {
+      visiblePositions=
+          PositionLists.removeVisible(visiblePositions, positions,
+                                      modelPositions, count);
     }
-  }
 
-  /**
-   * Class for supplying configuration information to a
-   * MasterDetailController.
+    if (titleIndex != null) {
+      for (String tag : removedTags) {
+        titleIndex.remove(tag);
+      }
+    }
+
+    for (String tag : removedTags) {
+      sortKeys.remove(tag);
+    }
+
+    IndexedPagerListAdapter index=getSectionIndex();
+
+    if (index != null) {
+      index.onRemoved(positions, count);
+    }
+
+    ModelPagerAdapter adapter=(ModelPagerAdapter)getPagerAdapter();
+
+    adapter.beginBatch();
+
+    try {
+      for (int i=count - 1; i >= 0; i--) {
+        adapter.remove(positions[i]);
+      }
+
+      modCount++;
+      invalidateTagIndex();
+      getListView().clearChoices();
+      adapter.notifyDataSetChanged();
+    }
+    finally {
+      adapter.endBatch();
+    }
+  }
+
+  /**
+   * Replaces the contents of the model collection with the
+   * contents of the supplied list, which is not retained.
+   * Rather than rebuilding everything, the controller works
+   * out, on a background thread, which models were removed,
+   * inserted, moved, or replaced (matching models by their
+   * tags), then applies just those changes to the model
+   * collection and the pages, with a single notification to
+   * the master. If a large share of the models moved, the
+   * pages are replaced in one step instead, keeping their
+   * fragments (found again by tag).
+   * 
+   * Note that getModelTag() and getModelTitle() will be
+   * called on a background thread for the models in both the
+   * current collection and the snapshot. If you have a
+   * ModelStore, models in the current collection are not
+   * read from it for this; any not yet read are presumed
+   * changed. Otherwise, a model is changed if its title
+   * changed or isModelChanged() says so.
+   * 
+   * @param snapshot
+   *          the desired contents of the model collection
+   */
+  public void update(List<T> snapshot) {
+    final List<T> target=new ArrayList<T>(snapshot);
+    final List<T> current=snapshotModels();
+    final int generation=modCount;
+    final boolean sorted=isSortedByTitle();
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final String[] oldTags=new String[current.size()];
+        final String[] oldTitles=new String[current.size()];
+        final String[] newTags=new String[target.size()];
+        final String[] newTitles=new String[target.size()];
+        final char[] newInitials=new char[target.size()];
+
+        for (int i=0; i < oldTags.length; i++) {
+          oldTags[i]=tagAt(current, i);
+          oldTitles[i]=titleAt(current, i);
+        }
+
+        for (int i=0; i < newTags.length; i++) {
+          newTitles[i]=getModelTitle(target.get(i));
+        }
+
+        if (sorted) {
+          sortByTitle(target, newTitles);
+        }
+
+        for (int i=0; i < newTags.length; i++) {
+          newTags[i]=getModelTag(target.get(i));
+          newInitials[i]=IndexedPagerListAdapter.getInitial(newTitles[i]);
+        }
+
+        ModelDiff.ChangeTest test=new ModelDiff.ChangeTest() {
+          @Override
+          public boolean isChanged(int oldPosition, int newPosition) {
+            if (!TextUtils.equals(oldTitles[oldPosition],
+                                  newTitles[newPosition])) {
+              return(true);
+            }
+
+            T old=peekAt(current, oldPosition);
+
+            return(old == null
+                || isModelChanged(old, target.get(newPosition)));
+          }
+        };
+        final ModelDiff diff=ModelDiff.compute(oldTags, newTags, test);
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            if (generation == modCount) {
+              applyDiff(diff, target, newTags, newTitles, newInitials);
+            }
+            else {
+              // collection changed out from under us, so
+              // try again from where things stand now
+
+              update(target);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  @SuppressWarnings("unchecked")
+  void applyDiff(ModelDiff diff, List<T> target, String[] newTags,
+                 String[] newTitles, char[] newInitials) {
+    if (diff.size() == 0) {
+      return;
+    }
+
+    for (String tag : diff.getAffectedTags()) {
+      sortKeys.remove(tag); // gone, or title may have changed
+    }
+
+    List<T> models=getModelCollection();
+    ModelPagerAdapter adapter=(ModelPagerAdapter)getPagerAdapter();
+
+    // if filtered, the pages do not line up with the model
+    // collection, so only the models get the diff
+
+    boolean filtered=(visiblePositions != null);
+    String[] oldVisibleTags=(filtered ? getVisibleTags() : null);
+
+    // with a great many moves, rearrange the models in one
+    // pass, and swap in new pages rather than moving them
+    // one by one; the pages' fragments are found again by
+    // their tags, so only the affected models change
+
+    boolean bulk=diff.hasManyMoves();
+    boolean rebuild=(bulk && !filtered);
+    boolean permuted=false;
+
+    // with a ModelStore, only what the diff touched is
+    // written, unless the stored order no longer matches
+
+    LazyModelList<T> lazy=
+        (models instanceof LazyModelList ? (LazyModelList<T>)models
+            : null);
+    ArrayList<String> removedTags=new ArrayList<String>();
+    int[] written=new int[diff.size()];
+    int writtenCount=0;
+    int insertCount=0;
+    int firstInsert=newTags.length;
+    boolean moved=false;
+
+    noteChangedTags(diff.getAffectedTags());
+    adapter.beginBatch();
+
+    try {
+      for (int i=0; i < diff.size(); i++) {
+        int position=diff.getPosition(i);
+
+        switch (diff.getType(i)) {
+          case ModelDiff.REMOVE:
+            if (lazy != null) {
+              removedTags.add(lazy.getTag(position));
+            }
+
+            models.remove(position);
+
+            if (!filtered && !rebuild) {
+              adapter.remove(position);
+            }
+            break;
+
+          case ModelDiff.MOVE:
+            moved=true;
+
+            if (bulk) {
+              if (!permuted) {
+                permuteModels(models, diff.getOrder());
+                permuted=true;
+              }
+
+              break;
+            }
+
+            moveModel(models, diff.getFrom(i), position);
+
+            if (!filtered) {
+              adapter.move(diff.getFrom(i), position);
+            }
+            break;
+
+          case ModelDiff.INSERT:
+            models.add(position, target.get(position));
+            written[writtenCount++]=position;
+            insertCount++;
+            firstInsert=Math.min(firstInsert, position);
+
+            if (!filtered && !rebuild) {
+              adapter.insert(new SimplePageDescriptor(newTags[position],
+                                                      newTitles[position]),
+                             position);
+            }
+            break;
+
+          case ModelDiff.CHANGE:
+            models.set(position, target.get(position));
+            written[writtenCount++]=position;
+            break;
+        }
+      }
+
+      modCount++;
+      invalidateTagIndex();
+      titleIndex=null;
+
+      if (lazy != null) {
+        // the store puts new models at the end, so the stored
+        // order is only off if models moved or were inserted
+        // elsewhere; when sorted by title, the order is
+        // re-derived on load anyway
+
+        boolean reordered=
+            (moved || firstInsert < newTags.length - insertCount);
+
+        if (reordered && !isSortedByTitle()) {
+          lazy.persistAll();
+        }
+        else {
+          lazy.persistRemoval(removedTags);
+          Arrays.sort(written, 0, writtenCount);
+
+          for (int i=0; i < writtenCount; i++) {
+            lazy.persist(written[i]);
+          }
+        }
+      }
+
+      if (filtered) {
+        // keep showing what survives of the last result, until
+        // the filter is re-run below
+
+        keepVisible(adapter, oldVisibleTags);
+      }
+      else {
+        IndexedPagerListAdapter index=getSectionIndex();
+
+        if (index != null) {
+          index.setInitials(newInitials);
+        }
+      }
+
+      if (!rebuild) {
+        adapter.notifyDataSetChanged();
+      }
+    }
+    finally {
+      adapter.endBatch();
+    }
+
+    if (rebuild) {
+      // the old pages were left untouched, so nothing was
+      // notified above
+
+      replacePages(buildPages(newTags, newTitles));
+    }
+
+    if (filtered) {
+      setFilter(filter);
+    }
+  }
+
+  /**
+   * Filters the master (and, in single-pane mode, the
+   * pages) down to the models whose titles contain the
+   * supplied text, ignoring case. Pass null or an empty
+   * string to show all models again.
+   * 
+   * The search runs on a background thread, using an index
+   * of the three-character sequences in each title. The
+   * index is built on first use and then kept up to date as
+   * models are added and removed. If the text contains the
+   * previous filter (e.g., the user typed another
+   * character), only the previous matches are re-checked.
+   * 
+   * Models are not copied; the master simply shows the
+   * matching models, in the order they appear in the model
+   * collection. A model added while a filter is in effect
+   * is shown regardless. Note that getModelTag() and
+   * getModelTitle() will be called on a background thread.
+   * 
+   * @param query
+   *          the text to look for, or null
+   */
+  public void setFilter(String query) {
+    final String text=(TextUtils.isEmpty(query) ? null : query);
+    final int generation=++filterGeneration;
+    final int generationOfModels=modCount;
+    final int[] visible=visiblePositions;
+    final TitleIndex index=titleIndex;
+    final TagPositions cached=
+        (filterBase != null && filterBase.modCount == modCount ? filterBase
+            : null);
+
+    // only snapshot the collection if there is something to
+    // compute from it, not on every keystroke
+
+    final List<T> models=
+        (cached == null || index == null ? snapshotModels() : null);
+
+    filter=text;
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        TagPositions base=cached;
+
+        if (base == null) {
+          base=new TagPositions(generationOfModels, models.size());
+
+          for (int i=0; i < base.tags.length; i++) {
+            base.tags[i]=tagAt(models, i);
+            base.positions.put(base.tags[i], i);
+          }
+        }
+
+        final String[] tags=base.tags;
+        HashMap<String, Integer> positions=base.positions;
+        TitleIndex searched=index;
+
+        if (searched == null) {
+          searched=new TitleIndex();
+
+          for (int i=0; i < tags.length; i++) {
+            searched.add(tags[i], titleAt(models, i));
+          }
+        }
+
+        int[] matches=null;
+
+        if (text != null) {
+          String[] found=searched.query(text);
+          int count=0;
+
+          matches=new int[found.length];
+
+          for (String tag : found) {
+            Integer position=positions.get(tag);
+
+            if (position != null) {
+              matches[count++]=position;
+            }
+          }
+
+          matches=Arrays.copyOf(matches, count);
+          Arrays.sort(matches);
+        }
+
+        int size=(matches == null ? tags.length : matches.length);
+        final String[] newTags=new String[size];
+        final String[] newTitles=new String[size];
+        final char[] initials=new char[size];
+
+        for (int i=0; i < size; i++) {
+          newTags[i]=tags[matches == null ? i : matches[i]];
+          newTitles[i]=searched.getTitle(newTags[i]);
+          initials[i]=IndexedPagerListAdapter.getInitial(newTitles[i]);
+        }
+
+        String[] oldTags=tags;
+
+        if (visible != null) {
+          oldTags=new String[visible.length];
+
+          for (int i=0; i < visible.length; i++) {
+            oldTags[i]=tags[visible[i]];
+          }
+        }
+
+        final int[] result=matches;
+        final ModelDiff diff=ModelDiff.compute(oldTags, newTags, null);
+        final TitleIndex built=searched;
+        final TagPositions computed=base;
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            if (generation != filterGeneration) {
+              return; // superseded by a later filter
+            }
+
+            if (generationOfModels != modCount) {
+              // collection changed out from under us, so
+              // try again from where things stand now
+
+              setFilter(text);
+            }
+            else {
+              titleIndex=built;
+              filterBase=computed;
+              publishFilter(result, diff, newTags, newTitles, initials);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @return the text last passed to setFilter(), or null if
+   *         the master is not filtered
+   */
+  public String getFilter() {
+    return(filter);
+  }
+
+  void publishFilter(int[] matches, ModelDiff diff, String[] newTags,
+                     String[] newTitles, char[] initials) {
+    ModelPagerAdapter adapter=(ModelPagerAdapter)getPagerAdapter();
+    ListAdapter master=getListView().getAdapter();
+
+    visiblePositions=matches;
+
+    if (master instanceof IndexedPagerListAdapter) {
+      ((IndexedPagerListAdapter)master).setInitials(initials);
+    }
+
+    if (diff.size() > 0) {
+      noteChangedTags(diff.getAffectedTags());
+
+      // a broad change (e.g., the first character typed)
+      // would cost O(n) per page, so swap in new pages
+
+      if (diff.hasManyOperations(newTags.length)) {
+        replacePages(buildPages(newTags, newTitles));
+      }
+      else {
+        adapter.beginBatch();
+
+        try {
+          applyVisibleDiff(adapter, diff, newTags, newTitles);
+          adapter.notifyDataSetChanged();
+        }
+        finally {
+          adapter.endBatch();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param tags
+   *          the tags of the pages
+   * @param titles
+   *          their titles
+   * @return new pages for them, built in one pass
+   */
+  private ModelPagerAdapter buildPages(String[] tags, String[] titles) {
+    ArrayList<PageDescriptor> pages=new ArrayList<PageDescriptor>(tags.length);
+
+    for (int i=0; i < tags.length; i++) {
+      pages.add(new SimplePageDescriptor(tags[i], titles[i]));
+    }
+
+    return(new ModelPagerAdapter(getFragmentManager(), pages));
+  }
+
+  /**
+   * Trims the pages down to those whose models are still in
+   * the model collection, after the collection was changed
+   * while filtered.
+   * 
+   * @param adapter
+   *          the pages
+   * @param oldTags
+   *          the tags of the models shown before the change
+   */
+  private void keepVisible(ModelPagerAdapter adapter, String[] oldTags) {
+    int[] kept=new int[oldTags.length];
+    int count=0;
+
+    for (String tag : oldTags) {
+      int position=positionOfTag(tag);
+
+      if (position >= 0) {
+        kept[count++]=position;
+      }
+    }
+
+    kept=Arrays.copyOf(kept, count);
+    Arrays.sort(kept);
+
+    String[] newTags=new String[count];
+
+    for (int i=0; i < count; i++) {
+      newTags[i]=tagAt(getModelCollection(), kept[i]);
+    }
+
+    ModelDiff diff=ModelDiff.compute(oldTags, newTags, null);
+
+    noteChangedTags(diff.getAffectedTags());
+    visiblePositions=kept;
+
+    if (diff.hasManyOperations(count)) {
+      String[] newTitles=new String[count];
+
+      for (int i=0; i < count; i++) {
+        newTitles[i]=titleAt(getModelCollection(), kept[i]);
+      }
+
+      // the old pages, still in the caller's batch, are no
+      // longer shown, so what the caller does to them is moot
+
+      replacePages(buildPages(newTags, newTitles));
+    }
+    else {
+      applyVisibleDiff(adapter, diff, newTags, null);
+    }
+  }
+
+  private void applyVisibleDiff(ModelPagerAdapter adapter, ModelDiff diff,
+                                String[] newTags, String[] newTitles) {
+    for (int i=0; i < diff.size(); i++) {
+      int position=diff.getPosition(i);
+
+      switch (diff.getType(i)) {
+        case ModelDiff.REMOVE:
+          adapter.remove(position);
+          break;
+
+        case ModelDiff.MOVE:
+          adapter.move(diff.getFrom(i), position);
+          break;
+
+        case ModelDiff.INSERT:
+          adapter.insert(new SimplePageDescriptor(newTags[position],
+                                                  newTitles[position]),
+                         position);
+          break;
+      }
+    }
+  }
+
+  /**
+   * @param model
+   *          a model in, or about to be in, the collection
+   * @return the collation key for its title, from the cache
+   *         if possible
+   */
+  CollationKey getSortKey(T model) {
+    String tag=getModelTag(model);
+    CollationKey result=sortKeys.get(tag);
+
+    if (result == null) {
+      result=getCollationKey(collator, getModelTitle(model));
+      sortKeys.put(tag, result);
+    }
+
+    return(result);
+  }
+
+  /**
+   * @param models
+   *          the model collection, or a snapshot of it
+   * @param position
+   *          a position in that list
+   * @return the collation key for the title of the model at
+   *         that position, from the cache if possible
+   */
+  CollationKey getSortKeyAt(List<T> models, int position) {
+    String tag=tagAt(models, position);
+    CollationKey result=sortKeys.get(tag);
+
+    if (result == null) {
+      result=getCollationKey(collator, titleAt(models, position));
+      sortKeys.put(tag, result);
+    }
+
+    return(result);
+  }
+
+  /**
+   * @param key
+   *          the collation key of a model's title
+   * @return the position in the model collection at which
+   *         to insert that model, after any with equal titles
+   */
+  private int findInsertionPoint(CollationKey key) {
+    List<T> models=getModelCollection();
+    int low=0;
+    int high=models.size();
+
+    while (low < high) {
+      int mid=(low + high) >>> 1;
+
+      if (getSortKeyAt(models, mid).compareTo(key) <= 0) {
+        low=mid + 1;
+      }
+      else {
+        high=mid;
+      }
+    }
+
+    return(low);
+  }
+
+  /**
+   * Rearranges the model collection in one pass, without
+   * reading any models from a ModelStore.
+   * 
+   * @param models
+   *          the model collection
+   * @param order
+   *          for each new position, the old position of the
+   *          model to go there
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> void permuteModels(List<T> models, int[] order) {
+    if (models instanceof LazyModelList) {
+      ((LazyModelList<T>)models).permute(order);
+    }
+    else {
+      List<T> old=new ArrayList<T>(models);
+
+      for (int i=0; i < order.length; i++) {
+        models.set(i, old.get(order[i]));
+      }
+    }
+  }
+
+  /**
+   * Sorts models by title, along with their titles, for use
+   * on a background thread.
+   * 
+   * @param models
+   *          the models to sort
+   * @param titles
+   *          their titles, by position
+   */
+  private static <T> void sortByTitle(List<T> models, String[] titles) {
+    int[] order=orderByTitle(titles);
+    List<T> unsorted=new ArrayList<T>(models);
+    String[] unsortedTitles=titles.clone();
+
+    for (int i=0; i < order.length; i++) {
+      models.set(i, unsorted.get(order[i]));
+      titles[i]=unsortedTitles[order[i]];
+    }
+  }
+
+  /**
+   * Sorts a freshly-loaded model collection by title, if
+   * the collection is to be kept sorted, on whatever thread
+   * it was loaded, without reading any models from a
+   * ModelStore.
+   * 
+   * @param models
+   *          the model collection, or null
+   * @return the same collection
+   */
+  private List<T> sortLoaded(List<T> models) {
+    if (models != null && isSortedByTitle()) {
+      String[] titles=new String[models.size()];
+
+      for (int i=0; i < titles.length; i++) {
+        titles[i]=titleAt(models, i);
+      }
+
+      permuteModels(models, orderByTitle(titles));
+    }
+
+    return(models);
+  }
+
+  /**
+   * @param titles
+   *          some titles
+   * @return for each position in sorted order, the position
+   *         of the title to go there; safe to call on any
+   *         thread
+   */
+  private static int[] orderByTitle(String[] titles) {
+    final Collator local=Collator.getInstance(); // not thread-safe
+    final CollationKey[] keys=new CollationKey[titles.length];
+    Integer[] order=new Integer[titles.length];
+
+    for (int i=0; i < keys.length; i++) {
+      keys[i]=getCollationKey(local, titles[i]);
+      order[i]=i;
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer lhs, Integer rhs) {
+        return(keys[lhs].compareTo(keys[rhs]));
+      }
+    });
+
+    int[] result=new int[order.length];
+
+    for (int i=0; i < order.length; i++) {
+      result[i]=order[i];
+    }
+
+    return(result);
+  }
+
+  private static CollationKey getCollationKey(Collator collator,
+                                              String title) {
+    return(collator.getCollationKey(title == null ? "" : title));
+  }
+
+  private String[] getVisibleTags() {
+    String[] result=new String[getPagerAdapter().getCount()];
+
+    for (int i=0; i < result.length; i++) {
+      result[i]=tagAt(getModelCollection(), toModelPosition(i));
+    }
+
+    return(result);
+  }
+
+  /**
+   * @param position
+   *          a position in the master
+   * @return the model shown at that position
+   */
+  T getModelAt(int position) {
+    return(getModelCollection().get(toModelPosition(position)));
+  }
+
+  /**
+   * @param models
+   *          the model collection, or a snapshot of it
+   * @param position
+   *          a position in that list
+   * @return the tag of the model at that position, without
+   *         reading the model from a ModelStore
+   */
+  @SuppressWarnings("unchecked")
+  String tagAt(List<T> models, int position) {
+    if (models instanceof LazyModelList) {
+      return(((LazyModelList<T>)models).getTag(position));
+    }
+
+    return(getModelTag(models.get(position)));
+  }
+
+  /**
+   * @param models
+   *          the model collection, or a snapshot of it
+   * @param position
+   *          a position in that list
+   * @return the title of the model at that position, from
+   *         the ModelStore's index if the model has not been
+   *         read yet
+   */
+  @SuppressWarnings("unchecked")
+  String titleAt(List<T> models, int position) {
+    if (models instanceof LazyModelList) {
+      LazyModelList<T> lazy=(LazyModelList<T>)models;
+      T model=lazy.peek(position);
+
+      return(model == null ? lazy.getTitle(position)
+          : getModelTitle(model));
+    }
+
+    return(getModelTitle(models.get(position)));
+  }
+
+  /**
+   * @param models
+   *          the model collection, or a snapshot of it
+   * @param position
+   *          a position in that list
+   * @return the model at that position, or null if it has
+   *         not been read from the ModelStore yet
+   */
+  @SuppressWarnings("unchecked")
+  T peekAt(List<T> models, int position) {
+    if (models instanceof LazyModelList) {
+      return(((LazyModelList<T>)models).peek(position));
+    }
+
+    return(models.get(position));
+  }
+
+  /**
+   * @return a copy of the model collection, for use on a
+   *         background thread
+   */
+  @SuppressWarnings("unchecked")
+  List<T> snapshotModels() {
+    List<T> models=getModelCollection();
+
+    if (models instanceof LazyModelList) {
+      return(((LazyModelList<T>)models).copy());
+    }
+
+    return(new ArrayList<T>(models));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> void moveModel(List<T> models, int from, int to) {
+    if (models instanceof LazyModelList) {
+      ((LazyModelList<T>)models).move(from, to);
+    }
+    else {
+      models.add(to, models.remove(from));
+    }
+  }
+
+  /**
+   * @param position
+   *          a position in the master
+   * @return the corresponding position in the model
+   *         collection
+   */
+  int toModelPosition(int position) {
+    return(visiblePositions == null ? position : visiblePositions[position]);
+  }
+
+  /**
+   * @param position
+   *          a position in the model collection, or -1
+   * @return the corresponding position in the master, or -1
+   *         if the model is filtered out
+   */
+  int toVisiblePosition(int position) {
+    if (visiblePositions == null || position < 0) {
+      return(position);
+    }
+
+    int result=Arrays.binarySearch(visiblePositions, position);
+
+    return(result < 0 ? -1 : result);
+  }
+
+  /**
+   * Computes the section index for the master on a
+   * background thread, from a snapshot of the model
+   * collection. If the collection changes in the meantime,
+   * in ways the index does not track, this tries again.
+   * 
+   * @param index
+   *          the adapter to receive the index
+   */
+  void buildSectionIndex(final IndexedPagerListAdapter index) {
+    final List<T> models=snapshotModels();
+    final int generation=modCount;
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final char[] initials=new char[models.size()];
+
+        for (int i=0; i < initials.length; i++) {
+          initials[i]=IndexedPagerListAdapter.getInitial(titleAt(models, i));
+        }
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            if (visiblePositions != null) {
+              return; // filtering supplies its own index
+            }
+
+            if (generation == modCount) {
+              index.setInitials(initials);
+
+              // have the fast-scroller pick up the sections,
+              // without disturbing the detail
+
+              noteChangedTags(Collections.<String>emptySet());
+              index.notifyDataSetChanged();
+            }
+            else if (getListView().getAdapter() == index) {
+              buildSectionIndex(index);
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * @return the master's section index, or null if it is
+   *         not an IndexedPagerListAdapter or the index has
+   *         not been built yet
+   */
+  IndexedPagerListAdapter getSectionIndex() {
+    ListAdapter adapter=getListView().getAdapter();
+
+    if (adapter instanceof IndexedPagerListAdapter
+        && ((IndexedPagerListAdapter)adapter).isIndexed()) {
+      return((IndexedPagerListAdapter)adapter);
+    }
+
+    return(null);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #onMasterChanged(java.util.Set)
+   */
+  @Override
+  void onMasterChanged(Set<String> affected) {
+    // any prefetch now in flight may have read models from
+    // before the change, so its results get ignored
+
+    titleGeneration++;
+
+    if (affected == null) {
+      titleCache.evictAll();
+      titleIndex=null; // titles may have changed in place
+      sortKeys.evictAll();
+    }
+    else {
+      for (String tag : affected) {
+        titleCache.remove(tag);
+      }
+    }
+  }
+
+  /**
+   * Returns the title for the model at the given position,
+   * from the title cache if possible. Also arranges to fill
+   * the cache for the rows just ahead of this one, in the
+   * direction the user appears to be scrolling.
+   * 
+   * @param position
+   *          the position whose title we need
+   * @return the title
+   */
+  CharSequence getCachedTitle(int position) {
+    List<T> models=getModelCollection();
+    int modelPosition=toModelPosition(position);
+    String tag=tagAt(models, modelPosition);
+    CharSequence result=titleCache.get(tag);
+
+    if (result == null) {
+      result=titleAt(models, modelPosition);
+
+      if (result != null) {
+        titleCache.put(tag, result);
+      }
+    }
+
+    boolean forward=(position >= lastTitlePosition);
+    int ahead=(forward ? position + TITLE_PREFETCH / 2
+        : position - TITLE_PREFETCH / 2);
+
+    lastTitlePosition=position;
+
+    // only bother once the rows half a prefetch ahead are
+    // no longer covered; with a ModelStore, titles are
+    // already at hand, from its index
+
+    int count=getPagerAdapter().getCount();
+
+    if (!titlePrefetchPending && !(models instanceof LazyModelList)
+        && ahead >= 0 && ahead < count
+        && titleCache.get(getModelTag(getModelAt(ahead))) == null) {
+      if (forward) {
+        prefetchTitles(position + 1,
+                       Math.min(count, position + 1 + TITLE_PREFETCH));
+      }
+      else {
+        prefetchTitles(Math.max(0, position - TITLE_PREFETCH), position);
+      }
+    }
+
+    return(result);
+  }
+
+  private void prefetchTitles(int start, int end) {
+    // snapshot the models here, as the collection is only
+    // safe to read on the main application thread
+
+    final List<T> batch=new ArrayList<T>(end - start);
+
+    for (int i=start; i < end; i++) {
+      batch.add(getModelAt(i));
+    }
+    final int generation=titleGeneration;
+
+    titlePrefetchPending=true;
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final String[] tags=new String[batch.size()];
+        final String[] titles=new String[batch.size()];
+
+        for (int i=0; i < tags.length; i++) {
+          tags[i]=getModelTag(batch.get(i));
+
+          if (titleCache.get(tags[i]) == null) {
+            titles[i]=getModelTitle(batch.get(i));
+          }
+        }
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            titlePrefetchPending=false;
+
+            if (generation == titleGeneration) {
+              for (int i=0; i < tags.length; i++) {
+                if (titles[i] != null) {
+                  titleCache.put(tags[i], titles[i]);
+                }
+              }
+            }
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Drops the tag index, and the positions cached for
+   * filtering, so they will be rebuilt on next use.
+   * Anything that changes positions within the model
+   * collection, other than appending, needs to call this.
+   */
+  void invalidateTagIndex() {
+    tagIndex.invalidate();
+    filterBase=null;
+  }
+
+  void updateActionModeTitle(ActionMode mode) {
+    mode.setTitle(getActionModeTitle());
+    mode.setSubtitle(getActionModeSubtitle());
+  }
+
+  /**
+   * @return a menu resource (e.g.,
+   *         R.menu.something_or_another) that will be
+   *         inflated into the action bar
+   */
+  private int getOptionsMenuResource() {
+    return(((MasterDetailController.Options)options).optionsMenuResource);
+  }
+
+  /**
+   * @return the ID of a menu item (e.g., R.id.add) that
+   *         represents the "add" operation
+   */
+  private int getAddMenuId() {
+    return(((MasterDetailController.Options)options).addMenuId);
+  }
+
+  /**
+   * @return the ID of a menu item (e.g., R.id.remove) that
+   *         represents the "remove" operation
+   */
+  private int getRemoveMenuId() {
+    return(((MasterDetailController.Options)options).removeMenuId);
+  }
+
+  /**
+   * @return true if the model collection is kept sorted by
+   *         title
+   */
+  private boolean isSortedByTitle() {
+    return(((MasterDetailController.Options)options).sortByTitle);
+  }
+
+  /**
+   * @return the most the models kept in memory may add up
+   *         to, per sizeOfModel(), or 0 for no limit
+   */
+  private int getModelCacheSize() {
+    return(((MasterDetailController.Options)options).modelCacheSize);
+  }
+
+  /**
+   * The tags of the model collection, in order, and the
+   * position of each, as of a given modCount, so that
+   * successive filters need not work them out again.
+   */
+  private static class TagPositions {
+    final int modCount;
+    final String[] tags;
+    final HashMap<String, Integer> positions;
+
+    TagPositions(int modCount, int size) {
+      this.modCount=modCount;
+      tags=new String[size];
+      positions=new HashMap<String, Integer>(size * 4 / 3 + 1);
+    }
+  }
+
+  class ModelPagerAdapter extends ArrayPagerAdapter<Fragment> {
+    private int batchDepth=0;
+    private boolean changePending=false;
+
+    public ModelPagerAdapter(FragmentManager fragmentManager,
+                             ArrayList<PageDescriptor> descriptors) {
+      super(fragmentManager, descriptors);
+    }
+
+    /**
+     * Starts a batch of changes. Until the matching
+     * endBatch(), calls to notifyDataSetChanged() (including
+     * those made by add(), remove(), etc.) are collapsed
+     * into a single notification, sent by endBatch().
+     */
+    void beginBatch() {
+      batchDepth++;
+    }
+
+    void endBatch() {
+      batchDepth--;
+
+      if (batchDepth == 0 && changePending) {
+        changePending=false;
+        notifyDataSetChanged();
+      }
+    }
+
+    @Override
+    public void notifyDataSetChanged() {
+      if (batchDepth > 0) {
+        changePending=true;
+      }
+      else {
+        super.notifyDataSetChanged();
+      }
+    }
+
+    @Override
+    protected Fragment createFragment(PageDescriptor desc) {
+      // start reading the model now, so the fragment is less
+      // likely to wait on it
+
+      requestModel(desc.getFragmentTag());
+
+      return(buildFragmentForTag(desc.getFragmentTag()));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * android.support.v4.view.PagerAdapter#getPageTitle(int)
+     */
+    @Override
+    public CharSequence getPageTitle(int position) {
+      // use the current title, not the one captured in the
+      // descriptor, as the model may have changed since
+
+      return(getCachedTitle(position));
+    }
+  }
+
+  /**
+   * Class for supplying configuration information to a
+   * MasterDetailController.
    */
   public static class Options extends MasterDetailOptions {
     int optionsMenuResource=-1;
     int addMenuId=-1;
     int removeMenuId=-1;
+    boolean sortByTitle=false;
+    int modelCacheSize=0;
   
     /**
      * @param resource
@@ -375,5 +2090,42 @@ abstract public class MasterDetailController<T> extends
   
       return(this);
     }
+  
+    /**
+     * @param sort
+     *          true to keep the model collection sorted by
+     *          title, using the Collator for the default
+     *          locale, or false to leave it in the order you
+     *          supply and append new models (default: false);
+     *          the initial sort is done as part of loading
+     *          the collection, so in the background with
+     *          asyncModelCollection()
+     * @return the options object
+     */
+    public Options sortByTitle(boolean sort) {
+      this.sortByTitle=sort;
+  
+      return(this);
+    }
+  
+    /**
+     * @param size
+     *          the most that the models held in memory may
+     *          add up to, per sizeOfModel() on the
+     *          controller (by default, a count of models);
+     *          beyond that, the least-recently-used models
+     *          are dropped, to be reloaded via loadModel() or
+     *          your ModelStore when next needed (default: 0,
+     *          meaning all models stay in memory); without a
+     *          ModelStore, you must override loadModel() and
+     *          canLoadModel(), or loading the collection
+     *          fails with an IllegalStateException
+     * @return the options object
+     */
+    public Options modelCacheSize(int size) {
+      this.modelCacheSize=size;
+  
+      return(this);
+    }
   }
 }
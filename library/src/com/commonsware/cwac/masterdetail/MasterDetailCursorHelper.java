@@ -0,0 +1,345 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import android.app.Fragment;
+import android.app.FragmentManager;
+import android.database.Cursor;
+import android.support.v13.app.FragmentStatePagerAdapter;
+import android.support.v4.view.PagerAdapter;
+
+/**
+ * Subclass of MasterDetailHelper, designed for cases where
+ * your model collection is a Cursor, potentially with a
+ * great many rows. Rather than building a page for every
+ * row up front, this helper keeps only a sliding "window"
+ * of tags and titles in memory, centered on whatever the
+ * user is looking at, and loads additional windows on a
+ * background thread as the master list is scrolled.
+ * 
+ * Note that the Cursor is read from a background thread,
+ * while holding a lock on the Cursor itself, one row at a
+ * time. If you use the Cursor directly from your own code,
+ * synchronize on it as well. Closing the Cursor is up to
+ * you.
+ * 
+ * As only the window's tags are known, the master's IDs
+ * are not stable (see hasStableIds()).
+ */
+abstract public class MasterDetailCursorHelper extends
+    MasterDetailHelper<Cursor> {
+  /**
+   * Given a Cursor positioned on a row, returns a unique
+   * identifying tag for that row (e.g., its _ID, as a
+   * String). This tag will be used to identify the fragment
+   * associated with the row. This is usually called on a
+   * background thread, but not always.
+   * 
+   * @param row
+   *          the Cursor, positioned on the row whose tag we
+   *          need
+   * @return the aforementioned tag
+   */
+  protected abstract String getModelTag(Cursor row);
+
+  /**
+   * Given a Cursor positioned on a row, returns the title of
+   * that row, to be used for the contents of the row in the
+   * master ListView. This is called on a background thread.
+   * 
+   * @param row
+   *          the Cursor, positioned on the row whose title we
+   *          need
+   * @return the title of the row
+   */
+  protected abstract String getModelTitle(Cursor row);
+
+  /**
+   * Given a row's tag, returns a newly-constructed Fragment
+   * for that row, to be shown in the detail area.
+   * 
+   * @param tag
+   *          identifier of the row
+   * @return the fragment to show as the detail for this row
+   */
+  protected abstract Fragment buildFragmentForTag(String tag);
+
+  private volatile RowWindow window=null;
+  private int pendingStart=-1;
+
+  /**
+   * Constructor for a MasterDetailCursorHelper
+   * 
+   * @param options
+   *          a MasterDetailCursorHelper.Options providing
+   *          configuration information for this helper
+   */
+  public MasterDetailCursorHelper(MasterDetailCursorHelper.Options options) {
+    super(options);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #buildPagerAdapter(android.app.FragmentManager)
+   */
+  @Override
+  protected PagerAdapter buildPagerAdapter(FragmentManager fm) {
+    Cursor rows=getModelCollection();
+    int count=0;
+
+    if (rows != null) {
+      synchronized(rows) {
+        count=rows.getCount();
+      }
+    }
+
+    window=null;
+    pendingStart=-1;
+
+    return(new CursorPagerAdapter(fm, count));
+  }
+
+  /**
+   * Returns the tag for the given position, if it is within
+   * the current window, or null otherwise. This never reads
+   * the Cursor, as it is called on the main application
+   * thread (e.g., for list IDs); until the row's window is
+   * loaded (see getTitleAt()), its ID is its position.
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #getItemTag(int)
+   */
+  @Override
+  protected String getItemTag(int position) {
+    RowWindow w=window;
+
+    if (w != null && w.contains(position)) {
+      return(w.tags[position - w.start]);
+    }
+
+    return(null);
+  }
+
+  /**
+   * @param position
+   *          a row position
+   * @return the tag for that row, from the window if
+   *         possible, or else read from the Cursor on this
+   *         thread
+   */
+  private String readItemTag(int position) {
+    String result=getItemTag(position);
+
+    if (result == null) {
+      // only for building a detail fragment, which cannot
+      // wait for the window; window loads only hold the lock
+      // for a row at a time, so this does not wait long
+
+      Cursor rows=getModelCollection();
+
+      synchronized(rows) {
+        rows.moveToPosition(position);
+        result=getModelTag(rows);
+      }
+    }
+
+    return(result);
+  }
+
+  /**
+   * Returns false, as a row's ID is derived from its tag
+   * only while the row is in the window, and is its
+   * position otherwise, so the ID can change as the window
+   * slides. Hence, ListView does not confirm checked rows by
+   * ID, and details are not cached by tag.
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.MasterDetailHelper
+   * #hasStableIds()
+   */
+  @Override
+  public boolean hasStableIds() {
+    return(false);
+  }
+
+  /**
+   * Returns the title for the given position, if it is
+   * within the current window. Otherwise, returns an empty
+   * string and arranges to load a window around this
+   * position, after which the visible rows of the master
+   * are re-bound. Also loads the next window in advance
+   * when the position nears an edge of the current one.
+   * 
+   * @param position
+   *          the position whose title we need
+   * @return the title, or an empty string if it is not yet
+   *         loaded
+   */
+  CharSequence getTitleAt(int position) {
+    RowWindow w=window;
+    int size=getWindowSize();
+
+    if (w != null && w.contains(position)) {
+      int offset=position - w.start;
+
+      if (offset < size / 4 && w.start > 0) {
+        requestWindow(position);
+      }
+      else if (offset > size - size / 4
+          && w.end() < getPagerAdapter().getCount()) {
+        requestWindow(position);
+      }
+
+      return(w.titles[offset]);
+    }
+
+    requestWindow(position);
+
+    return("");
+  }
+
+  private void requestWindow(int position) {
+    final int size=getWindowSize();
+    final int count=getPagerAdapter().getCount();
+    final int start=
+        Math.max(0, Math.min(position - size / 2, count - size));
+
+    if (start == pendingStart) {
+      return; // already on its way
+    }
+
+    RowWindow w=window;
+
+    if (w != null && w.start == start) {
+      return; // already have it
+    }
+
+    pendingStart=start;
+
+    final Cursor rows=getModelCollection();
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final RowWindow result=
+            new RowWindow(start, Math.min(size, count - start));
+
+        // lock per row, not per window, so readItemTag() on
+        // the main application thread is not held up for
+        // the whole window
+
+        for (int i=0; i < result.tags.length; i++) {
+          synchronized(rows) {
+            if (rows.isClosed() || !rows.moveToPosition(start + i)) {
+              break;
+            }
+
+            result.tags[i]=getModelTag(rows);
+            result.titles[i]=getModelTitle(rows);
+          }
+        }
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            if (rows == getModelCollection()) {
+              window=result;
+
+              if (pendingStart == start) {
+                pendingStart=-1;
+              }
+
+              rebindVisibleRows();
+            }
+          }
+        });
+      }
+    });
+  }
+
+  private int getWindowSize() {
+    return(((MasterDetailCursorHelper.Options)options).windowSize);
+  }
+
+  private static class RowWindow {
+    final int start;
+    final String[] tags;
+    final String[] titles;
+
+    RowWindow(int start, int size) {
+      this.start=start;
+      tags=new String[size];
+      titles=new String[size];
+    }
+
+    boolean contains(int position) {
+      return(position >= start && position < end()
+          && titles[position - start] != null);
+    }
+
+    int end() {
+      return(start + titles.length);
+    }
+  }
+
+  class CursorPagerAdapter extends FragmentStatePagerAdapter {
+    private final int count;
+
+    CursorPagerAdapter(FragmentManager fm, int count) {
+      super(fm);
+      this.count=count;
+    }
+
+    @Override
+    public int getCount() {
+      return(count);
+    }
+
+    @Override
+    public Fragment getItem(int position) {
+      return(buildFragmentForTag(readItemTag(position)));
+    }
+
+    @Override
+    public CharSequence getPageTitle(int position) {
+      return(getTitleAt(position));
+    }
+  }
+
+  /**
+   * Class for supplying configuration information to a
+   * MasterDetailCursorHelper.
+   */
+  public static class Options extends MasterDetailOptions {
+    int windowSize=200;
+
+    /**
+     * @param size
+     *          the number of rows whose tags and titles are
+     *          held in memory at once (default: 200); should
+     *          be several screenfuls
+     * @return the options object
+     */
+    public Options windowSize(int size) {
+      this.windowSize=size;
+
+      return(this);
+    }
+  }
+}
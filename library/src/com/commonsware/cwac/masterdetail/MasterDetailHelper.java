@@ -23,8 +23,14 @@ import android.content.res.Resources;
 import android.database.DataSetObserver;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.v4.view.PagerAdapter;
+import android.text.TextUtils;
+import android.util.DisplayMetrics;
+import android.util.Log;
 import android.util.SparseBooleanArray;
+import android.util.TypedValue;
 import android.view.ActionMode;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -40,6 +46,20 @@ import android.widget.ListAdapter;
 import android.widget.ListView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -57,7 +77,7 @@ import java.util.concurrent.atomic.AtomicInteger;
  *          Cursor)
  */
 abstract public class MasterDetailHelper<T> implements
-    PagerListAdapter.Assistant, OnItemLongClickListener,
+    PagerListAdapter.StableIdAssistant, OnItemLongClickListener,
     MultiChoiceModeListener {
   /**
    * Override this to provide the PagerAdapter that
@@ -84,8 +104,28 @@ abstract public class MasterDetailHelper<T> implements
       "com.commonsware.cwac.masterdetail.STATE_SHOW_DETAIL";
   static private final String STATE_PAGER_ID=
       "com.commonsware.cwac.masterdetail.STATE_PAGER_ID";
+  static private final String STATE_DETAIL_FRAGMENTS=
+      "com.commonsware.cwac.masterdetail.STATE_DETAIL_FRAGMENTS";
   static private final String STATE_MC=
       "com.commonsware.cwac.masterdetail.STATE_MC";
+  static private final String STATE_LIST=
+      "com.commonsware.cwac.masterdetail.STATE_LIST";
+  static private final String STATE_FIRST_VISIBLE=
+      "com.commonsware.cwac.masterdetail.STATE_FIRST_VISIBLE";
+  static private final String STATE_FIRST_TOP=
+      "com.commonsware.cwac.masterdetail.STATE_FIRST_TOP";
+  static private final String STATE_RUNS=
+      "com.commonsware.cwac.masterdetail.STATE_RUNS";
+  static private final String STATE_ANCHORS=
+      "com.commonsware.cwac.masterdetail.STATE_ANCHORS";
+  static private final String STATE_SELECTION_TOKEN=
+      "com.commonsware.cwac.masterdetail.STATE_SELECTION_TOKEN";
+  static private final String SELECTION_FILE_PREFIX=
+      "cwac-masterdetail-selection-";
+  static private final Handler MAIN=new Handler(Looper.getMainLooper());
+  static private final int ROW_LAYOUT=
+      android.R.layout.simple_list_item_activated_1;
+  static private Executor sDefaultExecutor=null;
   static private final AtomicInteger sNextGeneratedId=
       new AtomicInteger(1);
   private PagerAdapter pages=null;
@@ -95,6 +135,15 @@ abstract public class MasterDetailHelper<T> implements
   private ActionMode activeMode=null;
   private Activity host=null;
   private ListView lv=null;
+  private Bundle pendingState=null;
+  private HashSet<String> pendingChangedTags=null;
+  private String detailTag=null;
+  private int detailPosition=-1;
+  private int detailRebuildCount=0;
+  private int detailRebuildSkipCount=0;
+  private RowViewPool rowPool=null;
+  private String selectionToken=null;
+  boolean restoringSelection=false;
   MasterDetailOptions options=null;
 
   /**
@@ -149,14 +198,23 @@ abstract public class MasterDetailHelper<T> implements
         (ModelCollectionFragment<T>)getFragmentManager().findFragmentByTag(getModelFragmentTag());
 
     if (modelCollectionFragment == null) {
-      modelCollectionFragment=
-          new ModelCollectionFragment<T>().modelCollection(buildModelCollection());
+      modelCollectionFragment=new ModelCollectionFragment<T>();
+
+      if (!options.asyncModelCollection) {
+        long start=startTiming();
+        T models=loadModelCollection();
+
+        recordTiming(MasterDetailMetrics.BUILD_MODEL_COLLECTION, start);
+        modelCollectionFragment.modelCollection(models);
+      }
 
       getFragmentManager().beginTransaction()
                           .add(modelCollectionFragment,
                                getModelFragmentTag()).commit();
     }
 
+    modelCollectionFragment.helper=this;
+
     int minDip=getMinimumDipWidthForDualPane();
 
     if (getResources().getConfiguration().screenWidthDp >= minDip
@@ -167,14 +225,22 @@ abstract public class MasterDetailHelper<T> implements
       strategy=new MasterDetailStrategy.SinglePane(this, pagerId);
     }
 
-    pages=buildPagerAdapter(getFragmentManager());
-    host.setContentView(strategy.getContentView(pages));
-    lv=(ListView)host.findViewById(android.R.id.list);
+    if (state != null && state.getBoolean(STATE_DETAIL_FRAGMENTS, false)) {
+      strategy.onRestoreDetailFragments();
+    }
 
-    ListAdapter adapter=buildListAdapter();
+    if (modelCollectionFragment.isLoaded()) {
+      pages=buildPages();
+    }
 
-    adapter.registerDataSetObserver(masterObserver);
-    setListAdapter(adapter);
+    // if pages is null, the strategy will show the list's
+    // empty view until the model collection is loaded
+
+    long start=startTiming();
+
+    host.setContentView(strategy.getContentView(pages));
+    recordTiming(MasterDetailMetrics.GET_CONTENT_VIEW, start);
+    lv=(ListView)host.findViewById(android.R.id.list);
 
     if (offerActionMode()) {
       getListView().setOnItemLongClickListener(this);
@@ -182,22 +248,107 @@ abstract public class MasterDetailHelper<T> implements
 
     getListView().setChoiceMode(getDefaultChoiceMode());
 
+    if (pages == null) {
+      pendingState=state;
+      startRowPool();
+
+      if (!modelCollectionFragment.isLoading()) {
+        modelCollectionFragment.load(this);
+      }
+    }
+    else {
+      onModelCollectionReady(state);
+    }
+  }
+
+  /**
+   * Override this to find out when the model collection is
+   * available and the master and detail have been wired up
+   * to it. When using asyncModelCollection(), this is called
+   * on the main application thread once buildModelCollection()
+   * has completed in the background; otherwise, it is called
+   * at the end of onCreate(). If you override this, chain to
+   * the superclass.
+   */
+  protected void onModelCollectionLoaded() {
+    // no-op by default
+  }
+
+  /**
+   * @return true if the model collection is available (i.e.,
+   *         buildModelCollection() has completed), false
+   *         otherwise
+   */
+  public boolean isModelCollectionLoaded() {
+    return(pages != null);
+  }
+
+  /**
+   * Called by ModelCollectionFragment, on the main
+   * application thread, when an asynchronous load of the
+   * model collection has completed.
+   */
+  void onModelCollectionBuilt() {
+    if (host != null && pages == null) {
+      pages=buildPages();
+      strategy.setPagerAdapter(pages);
+
+      Bundle state=pendingState;
+
+      pendingState=null;
+      onModelCollectionReady(state);
+    }
+  }
+
+  private PagerAdapter buildPages() {
+    long start=startTiming();
+    PagerAdapter result=buildPagerAdapter(getFragmentManager());
+
+    recordTiming(MasterDetailMetrics.BUILD_PAGER_ADAPTER, start);
+
+    return(result);
+  }
+
+  private void onModelCollectionReady(Bundle state) {
+    ListAdapter adapter=buildListAdapter();
+
+    if (adapter instanceof PagerListAdapter) {
+      ((PagerListAdapter)adapter).metrics=options.metrics;
+    }
+
+    adapter.registerDataSetObserver(masterObserver);
+    setListAdapter(adapter);
+
     if (state != null) {
+      Bundle listState=state.getBundle(STATE_LIST);
+
       if (state.getBoolean(STATE_MC, false)) {
         getListView().setChoiceMode(ListView.CHOICE_MODE_MULTIPLE_MODAL);
         getListView().setMultiChoiceModeListener(this);
+        restoreSelection(listState);
       }
       else {
         int position=state.getInt(STATE_CHECKED, -1);
 
+        if (position > -1) {
+          setActivatedItem(position);
+        }
+
         if (position > -1 && state.getBoolean(STATE_SHOW_DETAIL, false)) {
           showDetail(position);
         }
         else {
-          strategy.clearDetail();
+          clearDetail();
         }
       }
+
+      if (listState != null) {
+        getListView().setSelectionFromTop(listState.getInt(STATE_FIRST_VISIBLE),
+                                          listState.getInt(STATE_FIRST_TOP));
+      }
     }
+
+    onModelCollectionLoaded();
   }
 
   /**
@@ -209,6 +360,10 @@ abstract public class MasterDetailHelper<T> implements
    * collection is retained. You can retrieve your instance
    * of your model collection via getModelCollection().
    * 
+   * If you enabled asyncModelCollection() on your options,
+   * this is called on a background thread, so do not touch
+   * the UI from here.
+   * 
    * @return the collection of model objects to be displayed
    *         in the associated activity
    */
@@ -216,6 +371,20 @@ abstract public class MasterDetailHelper<T> implements
     return(null);
   }
 
+  /**
+   * Supplies the model collection when it is first needed,
+   * on whatever thread buildModelCollection() would be
+   * called on. By default, this just calls
+   * buildModelCollection(); subclasses can override it to
+   * find the collection somewhere else first (e.g., a
+   * MasterDetailController restoring from its ModelStore).
+   * 
+   * @return the collection of model objects
+   */
+  T loadModelCollection() {
+    return(buildModelCollection());
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -226,8 +395,12 @@ abstract public class MasterDetailHelper<T> implements
    */
   @Override
   public View getView(int position, View convertView, ViewGroup parent) {
+    if (convertView == null && rowPool != null) {
+      convertView=rowPool.obtain();
+    }
+
     if (convertView == null) {
-      int layout=android.R.layout.simple_list_item_activated_1;
+      int layout=ROW_LAYOUT;
       // isActivatedStyle()
       // ? android.R.layout.simple_list_item_activated_1
       // : android.R.layout.simple_list_item_1;
@@ -235,11 +408,82 @@ abstract public class MasterDetailHelper<T> implements
       convertView=getLayoutInflater().inflate(layout, parent, false);
     }
 
-    ((TextView)convertView).setText(pages.getPageTitle(position));
+    TextView row=(TextView)convertView;
+    CharSequence title=pages.getPageTitle(position);
+
+    // skip the setText() (and resulting relayout) if this
+    // row already shows this title, as is typical for
+    // unaffected rows after a data change
+
+    if (!TextUtils.equals(row.getText(), title)) {
+      row.setText(title);
+    }
 
     return(convertView);
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.PagerListAdapter.
+   * StableIdAssistant#getItemId(int)
+   */
+  @Override
+  public long getItemId(int position) {
+    String tag=getItemTag(position);
+
+    if (tag == null) {
+      return(position);
+    }
+
+    return(getStableId(tag));
+  }
+
+  /**
+   * @param tag
+   *          an item tag
+   * @return a 64-bit ID for the tag (FNV-1a hash)
+   */
+  private static long getStableId(String tag) {
+    long result=0xcbf29ce484222325L;
+
+    for (int i=0; i < tag.length(); i++) {
+      result^=tag.charAt(i);
+      result*=0x100000001b3L;
+    }
+
+    return(result);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see
+   * com.commonsware.cwac.masterdetail.PagerListAdapter.
+   * StableIdAssistant#hasStableIds()
+   */
+  @Override
+  public boolean hasStableIds() {
+    return(false);
+  }
+
+  /**
+   * Override this to return a unique, stable tag for the
+   * item at the given position, such as a primary key. If
+   * you do, the master list's IDs will be derived from these
+   * tags, and you should also override hasStableIds() to
+   * return true. The default implementation returns null,
+   * in which case the position is used as the ID.
+   * 
+   * @param position
+   *          the position of the item in the PagerAdapter
+   * @return the tag for the item, or null
+   */
+  protected String getItemTag(int position) {
+    return(null);
+  }
+
   /**
    * Handler for action bar setup. The activity's
    * onCreateOptionsMenu() should call this one as part of
@@ -299,6 +543,27 @@ abstract public class MasterDetailHelper<T> implements
    *          Bundle of state to hold onto
    */
   public void onSaveInstanceState(Bundle state) {
+    if (pages == null) {
+      // still loading, so hang onto what we were given
+
+      if (pendingState != null) {
+        state.putBoolean(STATE_MC,
+                         pendingState.getBoolean(STATE_MC, false));
+        state.putInt(STATE_CHECKED,
+                     pendingState.getInt(STATE_CHECKED, -1));
+        state.putBoolean(STATE_SHOW_DETAIL,
+                         pendingState.getBoolean(STATE_SHOW_DETAIL,
+                                                 false));
+        state.putBundle(STATE_LIST, pendingState.getBundle(STATE_LIST));
+      }
+
+      state.putBoolean(STATE_DETAIL_FRAGMENTS,
+                       strategy.hasDetailFragments());
+      state.putInt(STATE_PAGER_ID, pagerId);
+
+      return;
+    }
+
     if (getListView().getChoiceMode() == ListView.CHOICE_MODE_MULTIPLE_MODAL) {
       state.putBoolean(STATE_MC, true);
     }
@@ -308,7 +573,271 @@ abstract public class MasterDetailHelper<T> implements
     }
 
     state.putBoolean(STATE_SHOW_DETAIL, strategy.isDetailShowing());
+    state.putBoolean(STATE_DETAIL_FRAGMENTS, strategy.hasDetailFragments());
     state.putInt(STATE_PAGER_ID, pagerId);
+    state.putBundle(STATE_LIST, saveListState());
+  }
+
+  /**
+   * The ListView does not save its own state (it would save
+   * every checked position, and every checked ID, which for
+   * a large selection can overflow the Binder transaction
+   * limit). Instead, we save the scroll position and, in
+   * multiple-choice mode, the checked rows as runs. If the
+   * runs would take up more than selectionStateLimit()
+   * bytes, they are retained in memory for a configuration
+   * change and written to a file in the cache directory in
+   * case the process is terminated, with just a token
+   * going into the Bundle.
+   * 
+   * @return the Bundle of list state
+   */
+  private Bundle saveListState() {
+    ListView list=getListView();
+    Bundle result=new Bundle();
+    View first=list.getChildAt(0);
+
+    result.putInt(STATE_FIRST_VISIBLE, list.getFirstVisiblePosition());
+    result.putInt(STATE_FIRST_TOP, first == null ? 0 : first.getTop());
+
+    if (list.getChoiceMode() == ListView.CHOICE_MODE_MULTIPLE_MODAL) {
+      SelectionRuns selection=encodeSelection();
+
+      if (selection.estimateSize() > options.selectionStateLimit) {
+        if (selectionToken == null) {
+          selectionToken=UUID.randomUUID().toString();
+        }
+
+        modelCollectionFragment.retainSelection(selectionToken, selection);
+        writeSelection(getSelectionFile(selectionToken), selection);
+        result.putString(STATE_SELECTION_TOKEN, selectionToken);
+      }
+      else {
+        result.putIntArray(STATE_RUNS, selection.getRuns());
+        result.putStringArray(STATE_ANCHORS, selection.getAnchors());
+
+        if (selectionToken != null) {
+          deleteSelection(getSelectionFile(selectionToken));
+          selectionToken=null;
+        }
+      }
+    }
+
+    return(result);
+  }
+
+  private SelectionRuns encodeSelection() {
+    SparseBooleanArray checked=getListView().getCheckedItemPositions();
+    int[] positions=new int[checked == null ? 0 : checked.size()];
+    int count=0;
+
+    // keys of a SparseBooleanArray are in ascending order
+
+    for (int i=0; i < positions.length; i++) {
+      if (checked.valueAt(i)) {
+        positions[count++]=checked.keyAt(i);
+      }
+    }
+
+    SelectionRuns.Tagger tagger=null;
+
+    if (hasStableIds()) {
+      tagger=new SelectionRuns.Tagger() {
+        @Override
+        public String getTag(int position) {
+          return(getItemTag(position));
+        }
+      };
+    }
+
+    return(SelectionRuns.encode(positions, count, tagger));
+  }
+
+  private void restoreSelection(Bundle listState) {
+    if (listState == null) {
+      return;
+    }
+
+    String token=listState.getString(STATE_SELECTION_TOKEN);
+
+    if (token == null) {
+      applySelection(SelectionRuns.fromArrays(listState.getIntArray(STATE_RUNS),
+                                              listState.getStringArray(STATE_ANCHORS)));
+
+      return;
+    }
+
+    selectionToken=token;
+
+    SelectionRuns retained=modelCollectionFragment.takeSelection(token);
+
+    if (retained != null) {
+      applySelection(retained);
+      discardSelectionFile();
+
+      return;
+    }
+
+    // our process was terminated, so the selection is only
+    // on disk
+
+    final File file=getSelectionFile(token);
+
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        final SelectionRuns result=readSelection(file);
+
+        runOnMainThread(new Runnable() {
+          @Override
+          public void run() {
+            if (result != null
+                && host != null
+                && getListView().getChoiceMode() == ListView.CHOICE_MODE_MULTIPLE_MODAL) {
+              applySelection(result);
+            }
+
+            discardSelectionFile();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Checks the rows in the selection, moving each run to
+   * wherever its anchor is now. A run whose anchor cannot be
+   * found, either where it was or anywhere else, is dropped,
+   * rather than checking whatever rows are there now. The
+   * per-row callbacks (onItemCheckedStateChanged()) are
+   * suppressed while this is going on, with one call at the
+   * end instead.
+   * 
+   * @param selection
+   *          the rows to check
+   */
+  private void applySelection(SelectionRuns selection) {
+    ListView list=getListView();
+    int count=list.getCount();
+    int last=-1;
+
+    restoringSelection=true;
+
+    try {
+      for (int i=0; i < selection.size(); i++) {
+        int start=selection.getStart(i);
+        String anchor=selection.getAnchor(i);
+
+        if (anchor != null) {
+          int moved=getPositionForTag(anchor);
+
+          if (moved >= 0) {
+            start=moved;
+          }
+          else if (start >= count || !anchor.equals(getItemTag(start))) {
+            continue; // anchor is gone, or we cannot tell where
+          }
+        }
+
+        for (int j=0; j < selection.getLength(i) && start + j < count; j++) {
+          list.setItemChecked(start + j, true);
+          last=start + j;
+        }
+      }
+    }
+    finally {
+      restoringSelection=false;
+    }
+
+    if (activeMode != null && last >= 0) {
+      onItemCheckedStateChanged(activeMode, last,
+                                list.getItemIdAtPosition(last), true);
+    }
+  }
+
+  private File getSelectionFile(String token) {
+    return(new File(host.getCacheDir(), SELECTION_FILE_PREFIX + token));
+  }
+
+  /**
+   * Writes the selection in the background, to a temporary
+   * file that then replaces the real one, so a process
+   * terminated mid-write leaves either the old selection or
+   * the new one, never a torn file.
+   */
+  private void writeSelection(final File file,
+                              final SelectionRuns selection) {
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        File temp=new File(file.getPath() + ".tmp");
+
+        try {
+          FileOutputStream fos=new FileOutputStream(temp);
+          DataOutputStream out=
+              new DataOutputStream(new BufferedOutputStream(fos));
+
+          try {
+            selection.write(out);
+          }
+          finally {
+            out.close();
+          }
+
+          if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+          }
+        }
+        catch (IOException e) {
+          Log.e(MasterDetailHelper.class.getSimpleName(),
+                "Exception writing selection", e);
+        }
+      }
+    });
+  }
+
+  private SelectionRuns readSelection(File file) {
+    if (!file.exists()) {
+      return(null);
+    }
+
+    try {
+      FileInputStream fis=new FileInputStream(file);
+      DataInputStream in=new DataInputStream(new BufferedInputStream(fis));
+
+      try {
+        return(SelectionRuns.read(in));
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      Log.e(MasterDetailHelper.class.getSimpleName(),
+            "Exception reading selection", e);
+    }
+
+    return(null);
+  }
+
+  /**
+   * Deletes the file holding the selection, if any, now
+   * that it has been restored or will never be needed.
+   */
+  private void discardSelectionFile() {
+    if (selectionToken != null) {
+      deleteSelection(getSelectionFile(selectionToken));
+      selectionToken=null;
+    }
+  }
+
+  private void deleteSelection(final File file) {
+    getExecutor().execute(new Runnable() {
+      @Override
+      public void run() {
+        file.delete();
+      }
+    });
   }
 
   /**
@@ -415,7 +944,7 @@ abstract public class MasterDetailHelper<T> implements
       public void run() {
         getListView().setChoiceMode(getDefaultChoiceMode());
         getListView().setAdapter(getListView().getAdapter());
-        strategy.clearDetail();
+        clearDetail();
       }
     });
   }
@@ -431,15 +960,19 @@ abstract public class MasterDetailHelper<T> implements
   @Override
   public void onItemCheckedStateChanged(ActionMode mode, int position,
                                         long id, boolean checked) {
+    if (restoringSelection) {
+      return; // applySelection() calls us once at the end
+    }
+
     if (getListView().getCheckedItemCount() == 0) {
-      strategy.clearDetail();
+      clearDetail();
     }
     else if (getListView().getCheckedItemCount() == 1) {
       if (checked && position > -1) {
         strategy.showDetailMultipleChoice(position);
       }
       else {
-        strategy.clearDetail();
+        clearDetail();
       }
     }
     else {
@@ -658,8 +1191,273 @@ abstract public class MasterDetailHelper<T> implements
     return(getActionModeResource() > 0);
   }
 
+  /**
+   * Returns the Executor used for background work, such as
+   * building the model collection when asyncModelCollection()
+   * is enabled. This is the one supplied via the options
+   * executor() method, or a shared single-thread executor if
+   * none was supplied.
+   * 
+   * @return the Executor for background work
+   */
+  protected Executor getExecutor() {
+    if (options.executor != null) {
+      return(options.executor);
+    }
+
+    synchronized(MasterDetailHelper.class) {
+      if (sDefaultExecutor == null) {
+        sDefaultExecutor=Executors.newSingleThreadExecutor();
+      }
+
+      return(sDefaultExecutor);
+    }
+  }
+
+  /**
+   * Arranges to run the supplied Runnable on the main
+   * application thread.
+   * 
+   * @param r
+   *          the work to be done
+   */
+  static void runOnMainThread(Runnable r) {
+    MAIN.post(r);
+  }
+
   void showDetail(int position) {
+    long start=startTiming();
+
+    detailTag=(hasStableIds() ? getItemTag(position) : null);
+    detailPosition=position;
     strategy.showDetail(position);
+    recordTiming(MasterDetailMetrics.SHOW_DETAIL, start);
+  }
+
+  /**
+   * Replaces the pages outright, in one step, for when
+   * changing them page by page would cost too much (e.g.,
+   * most of them moved). The master keeps its ListAdapter,
+   * pointed at the new pages, so checked rows carry over by
+   * ID. The detail being shown follows its tag to its new
+   * position, where its fragment is found again by that
+   * tag, keeping its state. Call noteChangedTags() first,
+   * as for any other change.
+   * 
+   * @param replacement
+   *          the new pages
+   */
+  void replacePages(PagerAdapter replacement) {
+    pages=replacement;
+    strategy.setPagerAdapter(replacement);
+
+    if (detailTag != null && detailPosition > -1) {
+      int position=getPositionForTag(detailTag);
+
+      if (position > -1) {
+        detailPosition=position;
+        strategy.onDetailMoved(position);
+      }
+    }
+
+    ListAdapter adapter=getListView().getAdapter();
+
+    if (adapter instanceof PagerListAdapter) {
+      ((PagerListAdapter)adapter).setPages(replacement);
+    }
+  }
+
+  void clearDetail() {
+    long start=startTiming();
+
+    strategy.clearDetail();
+    recordTiming(MasterDetailMetrics.CLEAR_DETAIL, start);
+  }
+
+  /**
+   * @return the current time, for passing to
+   *         recordTiming(), or 0 if there is no
+   *         MasterDetailMetrics to report to
+   */
+  long startTiming() {
+    return(options.metrics == null ? 0 : System.nanoTime());
+  }
+
+  /**
+   * Reports the time elapsed since startTiming() to the
+   * MasterDetailMetrics supplied via the options, if any.
+   * 
+   * @param step
+   *          one of the step constants from
+   *          MasterDetailMetrics
+   * @param start
+   *          the value returned by startTiming()
+   */
+  void recordTiming(String step, long start) {
+    MasterDetailMetrics metrics=options.metrics;
+
+    if (metrics != null) {
+      metrics.onTiming(step, System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Subclasses that change the model collection call this
+   * before notifying the PagerAdapter of the change, to
+   * indicate which items (by tag) were added, removed,
+   * moved, or otherwise changed. Items not mentioned are
+   * presumed untouched, so the detail need not be rebuilt
+   * if it is showing one of them. If a change is notified
+   * without a preceding call to this method, everything is
+   * presumed to have changed.
+   * 
+   * @param tags
+   *          the tags of the affected items
+   */
+  void noteChangedTags(Collection<String> tags) {
+    if (pendingChangedTags == null) {
+      pendingChangedTags=new HashSet<String>();
+    }
+
+    pendingChangedTags.addAll(tags);
+  }
+
+  /**
+   * Called when the master is told of a change, before any
+   * rows are re-bound, with the tags of the affected items
+   * (see noteChangedTags()), or null if everything is
+   * presumed to have changed. Subclasses caching anything
+   * per item drop those entries here.
+   * 
+   * @param affected
+   *          the tags of the affected items, or null
+   */
+  void onMasterChanged(Set<String> affected) {
+    // no-op by default
+  }
+
+  /**
+   * Override this to return the current position of the
+   * item with the given tag (see getItemTag()), if you can
+   * do so cheaply. This allows the helper to avoid
+   * rebuilding the detail when unrelated items change. The
+   * default implementation returns -1, meaning "unknown".
+   * 
+   * @param tag
+   *          the tag of the item to find
+   * @return the position of the item, or -1
+   */
+  protected int getPositionForTag(String tag) {
+    return(-1);
+  }
+
+  /**
+   * @return the number of times a change to the model
+   *         collection resulted in the detail being rebuilt
+   */
+  public int getDetailRebuildCount() {
+    return(detailRebuildCount);
+  }
+
+  /**
+   * @return the number of times a change to the model
+   *         collection did not affect the item shown in the
+   *         detail, so rebuilding the detail was skipped
+   */
+  public int getDetailRebuildSkipCount() {
+    return(detailRebuildSkipCount);
+  }
+
+  /**
+   * Re-binds the rows presently visible in the master,
+   * handing each existing row View back to the ListAdapter
+   * as its convertView. Use this when row contents (e.g.,
+   * titles loaded in the background) have changed, but the
+   * data set itself has not, so there is no need for a
+   * notifyDataSetChanged() and all it entails. If the
+   * ListAdapter returns a different View for any row, the
+   * rows are rebuilt via invalidateViews() instead, as only
+   * the ListView can swap in the new View.
+   */
+  void rebindVisibleRows() {
+    ListView list=getListView();
+    ListAdapter adapter=list.getAdapter();
+
+    if (adapter != null) {
+      int first=list.getFirstVisiblePosition();
+
+      for (int i=0; i < list.getChildCount(); i++) {
+        int position=first + i;
+
+        if (position < adapter.getCount()) {
+          View child=list.getChildAt(i);
+
+          if (adapter.getView(position, child, list) != child) {
+            list.invalidateViews();
+
+            return;
+          }
+        }
+      }
+    }
+  }
+
+  void onDestroy() {
+    if (host != null && host.isFinishing()) {
+      discardSelectionFile(); // no instance state to use it
+    }
+  }
+
+  void onDetach() {
+    if (strategy != null) {
+      strategy.onDestroy(); // a new one comes with a new host
+    }
+  }
+
+  void onPause() {
+    if (lv != null && lv.getChildCount() > 0) {
+      modelCollectionFragment.rowCount=lv.getChildCount();
+    }
+
+    if (rowPool != null) {
+      rowPool.release();
+      rowPool=null;
+    }
+
+    strategy.onPause();
+  }
+
+  /**
+   * Starts inflating a screenful of master rows whenever the
+   * main application thread is idle, for getView() to use
+   * once the model collection has been built. The rows
+   * themselves are not retained across configuration
+   * changes, as they hold onto the activity, but the number
+   * of rows last needed is.
+   */
+  private void startRowPool() {
+    if (options.preinflateRows) {
+      DisplayMetrics metrics=getResources().getDisplayMetrics();
+      TypedValue value=new TypedValue();
+      int rowHeight=(int)(48 * metrics.density);
+
+      if (host.getTheme()
+              .resolveAttribute(android.R.attr.listPreferredItemHeight,
+                                value, true)) {
+        rowHeight=Math.max(1, (int)value.getDimension(metrics));
+      }
+
+      int estimate=modelCollectionFragment.rowCount;
+
+      if (estimate <= 0) {
+        estimate=metrics.heightPixels / rowHeight + 1;
+      }
+
+      rowPool=
+          new RowViewPool(getLayoutInflater(), ROW_LAYOUT, getListView(),
+                          rowHeight, estimate);
+      rowPool.start();
+    }
   }
 
   void setActivatedItem(int position) {
@@ -715,13 +1513,25 @@ abstract public class MasterDetailHelper<T> implements
     @Override
     public void onChanged() {
       final int current=getListView().getCheckedItemPosition();
+      final Set<String> affected=pendingChangedTags;
+
+      pendingChangedTags=null;
+      onMasterChanged(affected);
 
       getListView().post(new Runnable() {
         @Override
         public void run() {
+          strategy.onDataSetChanged(affected);
+
           if (current >= 0) {
             if (strategy.isDetailShowing()) {
-              onDetailSelected(current);
+              if (isDetailUnaffected(affected)) {
+                detailRebuildSkipCount++;
+              }
+              else {
+                detailRebuildCount++;
+                onDetailSelected(current);
+              }
             }
           }
         }
@@ -734,6 +1544,37 @@ abstract public class MasterDetailHelper<T> implements
     }
   };
 
+  /**
+   * Determines whether the model shown in the detail
+   * survived a change untouched, in which case there is no
+   * need to rebuild the detail. If it merely shifted
+   * position, the strategy is told about its new position.
+   * 
+   * @param affected
+   *          the tags affected by the change, or null if
+   *          unknown
+   * @return true if the detail can be left alone
+   */
+  private boolean isDetailUnaffected(Set<String> affected) {
+    if (affected == null || detailTag == null
+        || affected.contains(detailTag)) {
+      return(false);
+    }
+
+    int position=getPositionForTag(detailTag);
+
+    if (position < 0) {
+      return(false);
+    }
+
+    if (position != detailPosition) {
+      detailPosition=position;
+      strategy.onDetailMoved(position);
+    }
+
+    return(true);
+  }
+
   /**
    * This class is public, because the fragment framework
    * requires it. However, this class is part of the
@@ -751,6 +1592,12 @@ abstract public class MasterDetailHelper<T> implements
    */
   public static class ModelCollectionFragment<T> extends Fragment {
     T modelCollection=null;
+    MasterDetailHelper<T> helper=null;
+    int rowCount=0;
+    private String selectionToken=null;
+    private SelectionRuns selection=null;
+    private boolean loaded=false;
+    private boolean loading=false;
 
     /*
      * (non-Javadoc)
@@ -765,6 +1612,50 @@ abstract public class MasterDetailHelper<T> implements
       setRetainInstance(true);
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.app.Fragment#onPause()
+     */
+    @Override
+    public void onPause() {
+      if (helper != null) {
+        helper.onPause();
+      }
+
+      super.onPause();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.app.Fragment#onDestroy()
+     */
+    @Override
+    public void onDestroy() {
+      if (helper != null) {
+        helper.onDestroy();
+      }
+
+      super.onDestroy();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.app.Fragment#onDetach()
+     */
+    @Override
+    public void onDetach() {
+      if (helper != null) {
+        helper.onDetach();
+      }
+
+      helper=null;
+
+      super.onDetach();
+    }
+
     /**
      * @return the model collection
      */
@@ -779,8 +1670,108 @@ abstract public class MasterDetailHelper<T> implements
      */
     ModelCollectionFragment<T> modelCollection(T model) {
       this.modelCollection=model;
+      loaded=true;
 
       return(this);
     }
+
+    /**
+     * Holds onto a large selection across a configuration
+     * change, so it need not be read back from disk.
+     * 
+     * @param token
+     *          the token saved in the Bundle
+     * @param selection
+     *          the selection
+     */
+    void retainSelection(String token, SelectionRuns selection) {
+      this.selectionToken=token;
+      this.selection=selection;
+    }
+
+    /**
+     * @param token
+     *          the token saved in the Bundle
+     * @return the selection retained with this token, or
+     *         null if there is none
+     */
+    SelectionRuns takeSelection(String token) {
+      SelectionRuns result=null;
+
+      if (token.equals(selectionToken)) {
+        result=selection;
+      }
+
+      selectionToken=null;
+      selection=null;
+
+      return(result);
+    }
+
+    /**
+     * @return true if the model collection has been
+     *         supplied, false otherwise
+     */
+    boolean isLoaded() {
+      return(loaded);
+    }
+
+    /**
+     * @return true if we are building the model collection
+     *         in the background, false otherwise
+     */
+    boolean isLoading() {
+      return(loading);
+    }
+
+    /**
+     * Builds the model collection on the loader's executor,
+     * then hands it to whatever helper is current at that
+     * point (the one that started the load may be long gone,
+     * courtesy of a configuration change).
+     * 
+     * @param loader
+     *          the helper whose loadModelCollection() will
+     *          supply the model collection
+     */
+    void load(final MasterDetailHelper<T> loader) {
+      loading=true;
+
+      loader.getExecutor().execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            long start=loader.startTiming();
+            final T result=loader.loadModelCollection();
+
+            loader.recordTiming(MasterDetailMetrics.BUILD_MODEL_COLLECTION,
+                                start);
+
+            runOnMainThread(new Runnable() {
+              @Override
+              public void run() {
+                loading=false;
+                modelCollection(result);
+
+                if (helper != null) {
+                  helper.onModelCollectionBuilt();
+                }
+              }
+            });
+          }
+          catch (final RuntimeException e) {
+            // rethrow on the main application thread, same
+            // as if we had loaded synchronously
+
+            runOnMainThread(new Runnable() {
+              @Override
+              public void run() {
+                throw e;
+              }
+            });
+          }
+        }
+      });
+    }
   }
 }
@@ -0,0 +1,87 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+/**
+ * Interface for something that wants to know how long the
+ * various steps of the master-detail lifecycle take. Supply
+ * an implementation via the metrics() method on
+ * MasterDetailOptions. HistogramMetrics is a ready-made
+ * implementation that tracks percentiles in memory.
+ * 
+ * Implementations need to be thread-safe, as some steps
+ * (e.g., buildModelCollection() with asyncModelCollection())
+ * are reported from background threads. Implementations
+ * also need to be fast, as some steps (e.g., row binds)
+ * happen a lot.
+ */
+public interface MasterDetailMetrics {
+  /**
+   * Step: the call to buildModelCollection()
+   */
+  String BUILD_MODEL_COLLECTION="buildModelCollection";
+
+  /**
+   * Step: the call to buildPagerAdapter()
+   */
+  String BUILD_PAGER_ADAPTER="buildPagerAdapter";
+
+  /**
+   * Step: building the master-detail views and setting them
+   * as the content view
+   */
+  String GET_CONTENT_VIEW="getContentView";
+
+  /**
+   * Step: showing a model in the detail area
+   */
+  String SHOW_DETAIL="showDetail";
+
+  /**
+   * Step: clearing the detail area
+   */
+  String CLEAR_DETAIL="clearDetail";
+
+  /**
+   * Step: instantiating the detail page (e.g., fragment) for
+   * a model, in dual-pane mode; fragment transactions
+   * complete asynchronously, so this does not include the
+   * fragment's onCreateView()
+   */
+  String INSTANTIATE_DETAIL="instantiateDetail";
+
+  /**
+   * Step: building the detail ViewPager, in single-pane
+   * mode, which is put off until the detail is first shown
+   * or the main application thread is idle
+   */
+  String BUILD_DETAIL_PAGER="buildDetailPager";
+
+  /**
+   * Step: binding a row in the master list (getView())
+   */
+  String BIND_ROW="bindRow";
+
+  /**
+   * Called when a step has completed.
+   * 
+   * @param step
+   *          the step, one of the constants on this
+   *          interface
+   * @param durationNanos
+   *          how long the step took, in nanoseconds
+   */
+  void onTiming(String step, long durationNanos);
+}
@@ -14,6 +14,8 @@
 
 package com.commonsware.cwac.masterdetail;
 
+import java.util.concurrent.Executor;
+
 /**
  * Class for providing configuration options to a
  * MasterDetailHelper. Use MasterDetailOptions.Controller
@@ -24,6 +26,14 @@ public class MasterDetailOptions {
   String modelFragmentTag=
       "OMG-YOU-BETTER-NOT-USE-THIS-TAG-FOR-ANYTHING-ELSE";
   int dualPaneWidthDip=720;
+  int detailCacheSize=0;
+  int paneCollapseThresholdDip=0;
+  boolean asyncModelCollection=false;
+  boolean preinflateRows=true;
+  boolean fastScroll=false;
+  int selectionStateLimit=16 * 1024;
+  Executor executor=null;
+  MasterDetailMetrics metrics=null;
 
   /**
    * Call this to supply the int value of a menu resource
@@ -74,4 +84,154 @@ public class MasterDetailOptions {
 
     return(this);
   }
+
+  /**
+   * Call this to have dual-pane mode keep up to this many
+   * recently-viewed detail fragments alive (but hidden),
+   * keyed by their tags, so that returning to one of them
+   * shows the existing fragment rather than building a new
+   * view hierarchy. This requires stable item IDs (e.g., a
+   * MasterDetailController). The default is 0, meaning that
+   * detail fragments are torn down as soon as the user
+   * moves on to another item. The cache is flushed when the
+   * activity is paused or the model collection changes.
+   * 
+   * @param size
+   *          the maximum number of hidden detail fragments
+   *          to retain
+   * @return the options object
+   */
+  public MasterDetailOptions detailCacheSize(int size) {
+    this.detailCacheSize=size;
+
+    return(this);
+  }
+
+  /**
+   * Call this to have dual-pane mode collapse the master or
+   * detail pane when the user drags the splitter to within
+   * this many density-independent pixels of the edge. A
+   * collapsed detail pane's fragment is hidden until the
+   * pane is expanded again. The default is 0, meaning that
+   * panes never collapse.
+   * 
+   * @param dip
+   *          the number of density-independent pixels below
+   *          which a pane collapses
+   * @return the options object
+   */
+  public MasterDetailOptions paneCollapseThresholdDip(int dip) {
+    this.paneCollapseThresholdDip=dip;
+
+    return(this);
+  }
+
+  /**
+   * Call this to have buildModelCollection() called on a
+   * background thread, rather than synchronously in
+   * onCreate(). Until it completes, the master shows its
+   * empty view (see buildListEmptyView()), and you will be
+   * called with onModelCollectionLoaded() once the model
+   * collection is ready. The default is false.
+   * 
+   * @param async
+   *          true to build the model collection in the
+   *          background, false otherwise
+   * @return the options object
+   */
+  public MasterDetailOptions asyncModelCollection(boolean async) {
+    this.asyncModelCollection=async;
+
+    return(this);
+  }
+
+  /**
+   * Call this to control whether, while the model collection
+   * is being built in the background (see
+   * asyncModelCollection()), the helper inflates a
+   * screenful of master rows whenever the main application
+   * thread is idle, for getView() to use once the model
+   * collection is ready. Turn this off if you override
+   * getView() and do not use the stock rows. The default is
+   * true.
+   * 
+   * @param preinflate
+   *          true to pre-inflate master rows, false
+   *          otherwise
+   * @return the options object
+   */
+  public MasterDetailOptions preinflateRows(boolean preinflate) {
+    this.preinflateRows=preinflate;
+
+    return(this);
+  }
+
+  /**
+   * Call this to turn on fast-scrolling for the master
+   * ListView. With a MasterDetailController that uses
+   * sortByTitle(), the fast-scroll thumb shows sections by
+   * initial letter, once they have been computed in the
+   * background. The default is false.
+   * 
+   * @param fastScroll
+   *          true to enable fast-scrolling, false otherwise
+   * @return the options object
+   */
+  public MasterDetailOptions fastScroll(boolean fastScroll) {
+    this.fastScroll=fastScroll;
+
+    return(this);
+  }
+
+  /**
+   * Call this to set how large, in bytes, the saved
+   * multiple-choice selection can get before it is written
+   * to a file in the cache directory, with only a token
+   * saved in the instance state Bundle. The selection is
+   * saved as runs of consecutive rows, so this is only
+   * reached when many scattered rows are checked. The
+   * default is 16KB.
+   * 
+   * @param bytes
+   *          the largest selection to put in the Bundle
+   * @return the options object
+   */
+  public MasterDetailOptions selectionStateLimit(int bytes) {
+    this.selectionStateLimit=bytes;
+
+    return(this);
+  }
+
+  /**
+   * Call this to supply the Executor to use for background
+   * work. The default is a single background thread shared
+   * by all helpers.
+   * 
+   * @param executor
+   *          the Executor to use
+   * @return the options object
+   */
+  public MasterDetailOptions executor(Executor executor) {
+    this.executor=executor;
+
+    return(this);
+  }
+
+  /**
+   * Call this to supply a MasterDetailMetrics that will be
+   * told how long key steps take (building the model
+   * collection and pager adapter, building the content view,
+   * showing and clearing the detail, binding master rows).
+   * HistogramMetrics is a ready-made implementation. The
+   * default is null, meaning that nothing is timed.
+   * 
+   * @param metrics
+   *          the MasterDetailMetrics to report timings to
+   * @return the options object
+   */
+  public MasterDetailOptions metrics(MasterDetailMetrics metrics) {
+    this.metrics=metrics;
+
+    return(this);
+  }
 }
@@ -15,6 +15,9 @@
 package com.commonsware.cwac.masterdetail;
 
 import android.app.Activity;
+import android.app.Fragment;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.support.v4.view.PagerAdapter;
 import android.support.v4.view.ViewPager;
 import android.support.v4.view.ViewPager.OnPageChangeListener;
@@ -24,6 +27,10 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.ListView;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import com.mobidevelop.widget.SplitPaneLayout;
 
 abstract class MasterDetailStrategy {
@@ -69,11 +76,61 @@ abstract class MasterDetailStrategy {
     // no-op by default
   }
 
+  void onDataSetChanged(Set<String> affected) {
+    // no-op by default
+  }
+
+  void onDetailMoved(int position) {
+    // no-op by default
+  }
+
+  void setPagerAdapter(PagerAdapter pages) {
+    // no-op by default
+  }
+
+  void onPause() {
+    // no-op by default
+  }
+
+  /**
+   * Called when the host activity is being destroyed, for
+   * good or for a configuration change, after which this
+   * strategy is never used again.
+   */
+  void onDestroy() {
+    // no-op by default
+  }
+
+  /**
+   * @return true if detail fragments may have been added
+   *         under pagerId, in which case the container for
+   *         them has to exist as soon as the fragments are
+   *         restored after a configuration change
+   */
+  boolean hasDetailFragments() {
+    return(true); // default always has its detail container
+  }
+
+  /**
+   * Called before getContentView() if the previous instance
+   * of this activity had detail fragments (see
+   * hasDetailFragments()).
+   */
+  void onRestoreDetailFragments() {
+    // no-op by default
+  }
+
   ListView buildListView(Activity host) {
     ListView result=new ListView(host);
 
     result.setId(android.R.id.list);
     result.setChoiceMode(ListView.CHOICE_MODE_SINGLE);
+    result.setFastScrollEnabled(helper.options.fastScroll);
+
+    // MasterDetailHelper saves the scroll position and
+    // checked rows itself, far more compactly
+
+    result.setSaveEnabled(false);
 
     return(result);
   }
@@ -89,8 +146,13 @@ abstract class MasterDetailStrategy {
 
   static class SinglePane extends MasterDetailStrategy implements
       OnPageChangeListener {
+    private FrameLayout root=null;
     private ListView master=null;
     private ViewPager detail=null;
+    private PagerAdapter pages=null;
+    private boolean detailFragments=false;
+    private MessageQueue.IdleHandler prewarm=null;
+    private boolean destroyed=false;
 
     SinglePane(MasterDetailHelper<?> helper, int pagerId) {
       super(helper, pagerId);
@@ -100,6 +162,8 @@ abstract class MasterDetailStrategy {
     View getContentView(PagerAdapter pages) {
       FrameLayout result=new FrameLayout(helper.getHost());
 
+      root=result;
+      this.pages=pages;
       master=buildListView(helper.getHost());
       result.addView(master,
                      new FrameLayout.LayoutParams(
@@ -115,28 +179,88 @@ abstract class MasterDetailStrategy {
                                                   Gravity.CENTER));
       master.setEmptyView(listEmptyView);
 
-      detail=buildViewPager(helper.getHost(), pages);
-      detail.setOnPageChangeListener(this);
-      showMaster();
-      result.addView(detail,
-                     new FrameLayout.LayoutParams(
-                                                  FrameLayout.LayoutParams.MATCH_PARENT,
-                                                  FrameLayout.LayoutParams.MATCH_PARENT));
+      // most launches only ever show the master, so the
+      // ViewPager waits for the first showDetail() or for
+      // the main application thread to go idle, unless
+      // restored fragments need it right away
+
+      if (detailFragments) {
+        getDetail();
+      }
+      else {
+        prewarm=new MessageQueue.IdleHandler() {
+          @Override
+          public boolean queueIdle() {
+            prewarm=null;
+
+            if (!destroyed && !helper.getHost().isFinishing()) {
+              getDetail();
+            }
+
+            return(false);
+          }
+        };
+
+        Looper.myQueue().addIdleHandler(prewarm);
+      }
 
       return(result);
     }
 
+    @Override
+    void setPagerAdapter(PagerAdapter pages) {
+      this.pages=pages;
+
+      if (detail != null) {
+        detail.setAdapter(pages);
+      }
+    }
+
+    /*
+     * A host destroyed by a configuration change is not
+     * finishing, so the idle handler also checks destroyed,
+     * in case it cannot be removed in time.
+     */
+    @Override
+    void onDestroy() {
+      destroyed=true;
+
+      if (prewarm != null) {
+        Looper.myQueue().removeIdleHandler(prewarm);
+        prewarm=null;
+      }
+    }
+
+    /*
+     * Only matters when the ViewPager got new pages (see
+     * setPagerAdapter()), as it then starts over at the
+     * first page; otherwise, it already follows the current
+     * page by itself.
+     */
+    @Override
+    void onDetailMoved(int position) {
+      if (detail != null && detail.getCurrentItem() != position) {
+        detail.setCurrentItem(position, false);
+      }
+    }
+
     @Override
     void showMaster() {
       master.setVisibility(View.VISIBLE);
-      detail.setVisibility(View.GONE);
+
+      if (detail != null) {
+        detail.setVisibility(View.GONE);
+      }
     }
 
     @Override
     void showDetail(int position) {
+      ViewPager pager=getDetail();
+
+      detailFragments=true;
       master.setVisibility(View.GONE);
-      detail.setVisibility(View.VISIBLE);
-      detail.setCurrentItem(position, false);
+      pager.setVisibility(View.VISIBLE);
+      pager.setCurrentItem(position, false);
     }
 
     @Override
@@ -146,7 +270,7 @@ abstract class MasterDetailStrategy {
 
     @Override
     boolean isDetailShowing() {
-      return(detail.getVisibility() == View.VISIBLE);
+      return(detail != null && detail.getVisibility() == View.VISIBLE);
     }
 
     @Override
@@ -154,6 +278,16 @@ abstract class MasterDetailStrategy {
       return(false);
     }
 
+    @Override
+    boolean hasDetailFragments() {
+      return(detailFragments);
+    }
+
+    @Override
+    void onRestoreDetailFragments() {
+      detailFragments=true;
+    }
+
     @Override
     public void onPageScrollStateChanged(int arg0) {
       // no-op
@@ -168,15 +302,40 @@ abstract class MasterDetailStrategy {
     public void onPageSelected(int position) {
       helper.setActivatedItem(position);
     }
+
+    private ViewPager getDetail() {
+      if (detail == null) {
+        long start=helper.startTiming();
+
+        detail=buildViewPager(helper.getHost(), pages);
+        detail.setOnPageChangeListener(this);
+        detail.setVisibility(View.GONE);
+        root.addView(detail,
+                     new FrameLayout.LayoutParams(
+                                                  FrameLayout.LayoutParams.MATCH_PARENT,
+                                                  FrameLayout.LayoutParams.MATCH_PARENT));
+        helper.recordTiming(MasterDetailMetrics.BUILD_DETAIL_PAGER, start);
+      }
+
+      return(detail);
+    }
   }
 
-  static class DualPane extends MasterDetailStrategy {
+  static class DualPane extends MasterDetailStrategy implements
+      SplitPaneLayout.OnPaneCollapseListener {
     private PagerAdapter detailSource=null;
     private ViewGroup detailTarget=null;
     private Object handle=null;
     private int lastPosition=-1;
     private View detailEmptyView=null;
     private View detailMultiChoice=null;
+    private String lastTag=null;
+    private boolean detailCollapsed=false;
+    // hidden detail handles, keyed by tag; no position is
+    // kept, as rows may move while a detail is cached, so
+    // destroyCached() looks the position up at eviction
+    private LinkedHashMap<String, Object> detailCache=
+        new LinkedHashMap<String, Object>(16, 0.75f, true);
 
     DualPane(MasterDetailHelper<?> helper, int pagerId) {
       super(helper, pagerId);
@@ -189,6 +348,9 @@ abstract class MasterDetailStrategy {
       SplitPaneLayout result=new SplitPaneLayout(helper.getHost());
 
       result.setOrientation(SplitPaneLayout.ORIENTATION_HORIZONTAL);
+      result.setCollapseThreshold((int)(helper.options.paneCollapseThresholdDip
+          * helper.getResources().getDisplayMetrics().density));
+      result.setOnPaneCollapseListener(this);
       result.setSplitterDrawable(helper.getResources()
                                        .getDrawable(R.drawable.divider_horizontal));
 
@@ -234,19 +396,46 @@ abstract class MasterDetailStrategy {
       return(result);
     }
 
+    @Override
+    void setPagerAdapter(PagerAdapter pages) {
+      detailSource=pages;
+    }
+
     @Override
     void showDetail(int position) {
       clearMultiChoice();
       detailEmptyView.setVisibility(View.GONE);
-      detailSource.startUpdate(detailTarget);
 
-      if (lastPosition > -1) {
-        detailSource.destroyItem(detailTarget, lastPosition, handle);
+      String tag=getCacheableTag(position);
+
+      if (tag != null && position == lastPosition && tag.equals(lastTag)) {
+        return; // already showing this one
       }
 
+      detailSource.startUpdate(detailTarget);
+      releaseDetail();
+
+      Object cached=(tag == null ? null : detailCache.remove(tag));
+
       lastPosition=position;
+      lastTag=tag;
+
+      if (cached != null) {
+        handle=cached;
+        setDetailHidden(handle, detailCollapsed);
+      }
+      else {
+        long start=helper.startTiming();
+
+        handle=detailSource.instantiateItem(detailTarget, position);
+        helper.recordTiming(MasterDetailMetrics.INSTANTIATE_DETAIL, start);
+
+        if (detailCollapsed
+            || (handle instanceof Fragment && ((Fragment)handle).isHidden())) {
+          setDetailHidden(handle, detailCollapsed);
+        }
+      }
 
-      handle=detailSource.instantiateItem(detailTarget, position);
       detailSource.finishUpdate(detailTarget);
     }
 
@@ -270,20 +459,163 @@ abstract class MasterDetailStrategy {
                                                         FrameLayout.LayoutParams.MATCH_PARENT));
     }
 
+    @Override
+    void onDataSetChanged(Set<String> affected) {
+      if (affected == null) {
+        flushDetailCache();
+      }
+      else if (!detailCache.isEmpty()) {
+        detailSource.startUpdate(detailTarget);
+
+        Iterator<Map.Entry<String, Object>> entries=
+            detailCache.entrySet().iterator();
+
+        while (entries.hasNext()) {
+          Map.Entry<String, Object> entry=entries.next();
+
+          if (affected.contains(entry.getKey())) {
+            entries.remove();
+            destroyCached(entry.getKey(), entry.getValue());
+          }
+        }
+
+        detailSource.finishUpdate(detailTarget);
+      }
+    }
+
+    /*
+     * While the detail pane is collapsed, keep the detail
+     * fragment hidden, so it gets onHiddenChanged() and can
+     * stop whatever it is doing.
+     */
+    @Override
+    public void onPaneCollapsed(SplitPaneLayout layout, int index) {
+      if (index == 1) {
+        detailCollapsed=true;
+
+        if (lastPosition > -1) {
+          setDetailHidden(handle, true);
+        }
+      }
+    }
+
+    @Override
+    public void onPaneExpanded(SplitPaneLayout layout, int index) {
+      if (index == 1) {
+        detailCollapsed=false;
+
+        if (lastPosition > -1) {
+          setDetailHidden(handle, false);
+        }
+      }
+    }
+
+    @Override
+    void onDetailMoved(int position) {
+      lastPosition=position;
+    }
+
+    @Override
+    void onPause() {
+      // cached fragments are hidden but attached, and we do
+      // not want them coming back to life after a
+      // configuration change, so get rid of them before the
+      // fragment state is saved
+
+      flushDetailCache();
+    }
+
     private void clearDetail(boolean showEmptyView) {
       clearMultiChoice();
       detailSource.startUpdate(detailTarget);
+      releaseDetail();
+      lastPosition=-1;
+      lastTag=null;
+      detailSource.finishUpdate(detailTarget);
 
+      if (showEmptyView) {
+        detailEmptyView.setVisibility(View.VISIBLE);
+      }
+    }
+
+    /**
+     * Gets rid of the current detail, either by hiding it
+     * and adding it to the cache, or by destroying it. Must
+     * be called between startUpdate() and finishUpdate().
+     */
+    private void releaseDetail() {
       if (lastPosition > -1) {
-        detailSource.destroyItem(detailTarget, lastPosition, handle);
+        if (lastTag != null && handle instanceof Fragment) {
+          setDetailHidden(handle, true);
+          detailCache.put(lastTag, handle);
+          trimDetailCache(helper.options.detailCacheSize);
+        }
+        else {
+          detailSource.destroyItem(detailTarget, lastPosition, handle);
+        }
       }
+    }
 
-      lastPosition=-1;
+    private void trimDetailCache(int max) {
+      Iterator<Map.Entry<String, Object>> entries=
+          detailCache.entrySet().iterator();
 
-      detailSource.finishUpdate(detailTarget);
+      while (detailCache.size() > max && entries.hasNext()) {
+        Map.Entry<String, Object> eldest=entries.next();
 
-      if (showEmptyView) {
-        detailEmptyView.setVisibility(View.VISIBLE);
+        entries.remove();
+        destroyCached(eldest.getKey(), eldest.getValue());
+      }
+    }
+
+    /**
+     * Destroys a cached detail, passing its current position
+     * if the helper can find it by tag, or POSITION_NONE if
+     * the row is gone or the helper cannot tell. Must be
+     * called between startUpdate() and finishUpdate().
+     */
+    private void destroyCached(String tag, Object cached) {
+      int position=helper.getPositionForTag(tag);
+
+      if (position < 0) {
+        position=PagerAdapter.POSITION_NONE;
+      }
+
+      detailSource.destroyItem(detailTarget, position, cached);
+    }
+
+    private void flushDetailCache() {
+      if (!detailCache.isEmpty()) {
+        detailSource.startUpdate(detailTarget);
+        trimDetailCache(0);
+        detailSource.finishUpdate(detailTarget);
+      }
+    }
+
+    private String getCacheableTag(int position) {
+      if (helper.options.detailCacheSize > 0 && helper.hasStableIds()) {
+        return(helper.getItemTag(position));
+      }
+
+      return(null);
+    }
+
+    private void setDetailHidden(Object detail, boolean hidden) {
+      if (detail instanceof Fragment) {
+        Fragment frag=(Fragment)detail;
+
+        // hide() and show() run asynchronously, so isHidden()
+        // may not reflect what we last asked for; just ask
+        // again, as both are no-ops if there is no change
+
+        if (hidden) {
+          helper.getFragmentManager().beginTransaction().hide(frag)
+                .commit();
+        }
+        else {
+          helper.getFragmentManager().beginTransaction().show(frag)
+                .commit();
+        }
       }
     }
 
@@ -0,0 +1,421 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * An edit script that turns one list of tagged items into
+ * another, computed by tag. Operations are meant to be
+ * applied in order, and positions in each operation are
+ * relative to the list as it stands after the preceding
+ * operations have been applied:
+ * 
+ * - REMOVE operations, in descending position order
+ * 
+ * - MOVE operations, for items that are in both lists but
+ * out of order; items on a longest increasing subsequence
+ * of new positions stay put, so the number of moves is
+ * minimal (see hasManyMoves() for when there are too many
+ * to be worth applying one by one)
+ * 
+ * - INSERT operations, in ascending position order
+ * 
+ * - CHANGE operations, for items that are in both lists, as
+ * determined by a ChangeTest
+ * 
+ * This class has no Android dependencies, so the script
+ * can be computed on any thread.
+ */
+final class ModelDiff {
+  static final int REMOVE=0;
+  static final int MOVE=1;
+  static final int INSERT=2;
+  static final int CHANGE=3;
+  private static final int MIN_MANY_OPERATIONS=32;
+  private static final int MANY_OPERATIONS_DIVISOR=16;
+
+  private int[] types=new int[16];
+  private int[] positions=new int[16];
+  private int[] froms=new int[16];
+  private int size=0;
+  private int moveCount=0;
+  private int[] order;
+  private final HashSet<String> affectedTags=new HashSet<String>();
+
+  /**
+   * Decides whether an item present in both lists has
+   * changed, given its position in each.
+   */
+  interface ChangeTest {
+    boolean isChanged(int oldPosition, int newPosition);
+  }
+
+  /**
+   * Computes the script to turn oldTags into newTags. Tags
+   * must be unique within each list.
+   * 
+   * @param oldTags
+   *          tags of the current list, in order
+   * @param newTags
+   *          tags of the desired list, in order
+   * @param test
+   *          decides which common items have changed, or
+   *          null to report no changes
+   * @return the script
+   */
+  static ModelDiff compute(String[] oldTags, String[] newTags,
+                           ChangeTest test) {
+    ModelDiff result=new ModelDiff();
+    HashMap<String, Integer> targets=
+        new HashMap<String, Integer>(newTags.length * 4 / 3 + 1);
+
+    for (int i=0; i < newTags.length; i++) {
+      targets.put(newTags[i], i);
+    }
+
+    for (int i=oldTags.length - 1; i >= 0; i--) {
+      if (!targets.containsKey(oldTags[i])) {
+        result.add(REMOVE, i, -1);
+        result.affectedTags.add(oldTags[i]);
+      }
+    }
+
+    // survivors, in their current order, with where they
+    // need to end up
+
+    int[] currentTargets=new int[oldTags.length];
+    int[] oldPositionOf=new int[newTags.length];
+    int count=0;
+
+    Arrays.fill(oldPositionOf, -1);
+
+    for (int i=0; i < oldTags.length; i++) {
+      Integer target=targets.get(oldTags[i]);
+
+      if (target != null) {
+        currentTargets[count++]=target;
+        oldPositionOf[target]=i;
+      }
+    }
+
+    int[] slotOf=new int[newTags.length];
+
+    for (int i=0; i < count; i++) {
+      slotOf[currentTargets[i]]=i;
+    }
+
+    result.order=new int[count];
+
+    for (int i=0, k=0; i < newTags.length; i++) {
+      if (oldPositionOf[i] >= 0) {
+        result.order[k++]=slotOf[i];
+      }
+    }
+
+    result.addMoves(currentTargets, count, newTags);
+
+    for (int i=0; i < newTags.length; i++) {
+      if (oldPositionOf[i] < 0) {
+        result.add(INSERT, i, -1);
+        result.affectedTags.add(newTags[i]);
+      }
+    }
+
+    if (test != null) {
+      for (int i=0; i < newTags.length; i++) {
+        if (oldPositionOf[i] >= 0 && test.isChanged(oldPositionOf[i], i)) {
+          result.add(CHANGE, i, -1);
+          result.affectedTags.add(newTags[i]);
+        }
+      }
+    }
+
+    return(result);
+  }
+
+  /**
+   * @return the number of operations in the script
+   */
+  int size() {
+    return(size);
+  }
+
+  /**
+   * @return the type of the operation at this index
+   *         (REMOVE, MOVE, INSERT, or CHANGE)
+   */
+  int getType(int index) {
+    return(types[index]);
+  }
+
+  /**
+   * @return the position affected by the operation at this
+   *         index (for INSERT and CHANGE, also the position
+   *         of the item in the new list)
+   */
+  int getPosition(int index) {
+    return(positions[index]);
+  }
+
+  /**
+   * @return for a MOVE, the position the item is moving
+   *         from
+   */
+  int getFrom(int index) {
+    return(froms[index]);
+  }
+
+  /**
+   * @return the number of MOVE operations in the script
+   */
+  int getMoveCount() {
+    return(moveCount);
+  }
+
+  /**
+   * @return true if so many items move that it is cheaper
+   *         to rearrange everything in one pass, using
+   *         getOrder(), than to apply the MOVE operations
+   *         one at a time (each of which is O(n) on an
+   *         array-backed list)
+   */
+  boolean hasManyMoves() {
+    return(moveCount > MIN_MANY_OPERATIONS
+        && moveCount > order.length / MANY_OPERATIONS_DIVISOR);
+  }
+
+  /**
+   * @param count
+   *          the length of the list once the script is
+   *          applied
+   * @return true if the script has so many operations,
+   *         for a list of that length, that it is cheaper
+   *         to rebuild the list in one pass than to apply
+   *         them one at a time (each of which is O(n) on an
+   *         array-backed list)
+   */
+  boolean hasManyOperations(int count) {
+    return(size() > MIN_MANY_OPERATIONS
+        && size() > count / MANY_OPERATIONS_DIVISOR);
+  }
+
+  /**
+   * @return for each item in both lists, in new order, its
+   *         position once the REMOVE operations have been
+   *         applied; this can stand in for the MOVE
+   *         operations
+   */
+  int[] getOrder() {
+    return(order);
+  }
+
+  /**
+   * @return the tags of all items removed, inserted, moved,
+   *         or changed by this script
+   */
+  HashSet<String> getAffectedTags() {
+    return(affectedTags);
+  }
+
+  private void add(int type, int position, int from) {
+    if (size == types.length) {
+      types=Arrays.copyOf(types, size * 2);
+      positions=Arrays.copyOf(positions, size * 2);
+      froms=Arrays.copyOf(froms, size * 2);
+    }
+
+    types[size]=type;
+    positions[size]=position;
+    froms[size]=from;
+    size++;
+  }
+
+  /**
+   * Adds the MOVE operations for the survivors. Items on a
+   * longest increasing subsequence of targets (the
+   * "anchors") stay put. The rest are moved in target
+   * order, each to just after the last item already in
+   * place with a lower target: that is, to the end of a
+   * chain of movers following the anchor with the next
+   * lower target. So where every mover ends up, relative to
+   * the anchors and to the movers not yet moved, is known
+   * up front, and each move's positions are counted with a
+   * Fenwick tree over those slots, in O(log n) apiece.
+   * 
+   * @param currentTargets
+   *          targets of the survivors, in their current order
+   * @param count
+   *          the number of survivors
+   * @param newTags
+   *          tags of the desired list, in order
+   */
+  private void addMoves(int[] currentTargets, int count, String[] newTags) {
+    boolean[] settled=longestIncreasing(currentTargets, count);
+    int[] anchorTargets=new int[count];
+    int anchorCount=0;
+
+    for (int i=0; i < count; i++) {
+      if (settled[i]) {
+        anchorTargets[anchorCount++]=currentTargets[i];
+      }
+    }
+
+    // chain 0 is at the front of the list; chain c follows
+    // anchor c - 1
+
+    int[] chainOf=new int[count];
+    int[] chainStart=new int[anchorCount + 1];
+
+    for (int i=0; i < count; i++) {
+      if (!settled[i]) {
+        chainOf[i]=
+            lowerBound(anchorTargets, anchorCount, currentTargets[i]);
+        chainStart[chainOf[i]]++; // size, for now
+      }
+    }
+
+    int[] slotKeys=new int[count];
+    int key=0;
+    int anchor=0;
+    int length=chainStart[0];
+
+    chainStart[0]=key;
+    key+=length;
+
+    for (int i=0; i < count; i++) {
+      slotKeys[i]=key++;
+
+      if (settled[i]) {
+        anchor++;
+        length=chainStart[anchor];
+        chainStart[anchor]=key;
+        key+=length;
+      }
+    }
+
+    int[] tree=new int[key + 1];
+
+    for (int i=0; i < count; i++) {
+      fenwickAdd(tree, slotKeys[i], 1);
+    }
+
+    for (int k=0; k < order.length; k++) {
+      int slot=order[k];
+
+      if (!settled[slot]) {
+        int from=fenwickCount(tree, slotKeys[slot]);
+
+        fenwickAdd(tree, slotKeys[slot], -1);
+
+        int chainKey=chainStart[chainOf[slot]]++;
+        int to=fenwickCount(tree, chainKey);
+
+        fenwickAdd(tree, chainKey, 1);
+
+        if (from != to) {
+          add(MOVE, to, from);
+          affectedTags.add(newTags[currentTargets[slot]]);
+          moveCount++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Marks the elements that make up one longest strictly
+   * increasing subsequence of values[0..count), in
+   * O(n log n) time.
+   */
+  static boolean[] longestIncreasing(int[] values, int count) {
+    int[] tails=new int[count]; // indices of subsequence ends
+    int[] previous=new int[count];
+    int length=0;
+
+    for (int i=0; i < count; i++) {
+      int low=0;
+      int high=length;
+
+      while (low < high) {
+        int mid=(low + high) >>> 1;
+
+        if (values[tails[mid]] < values[i]) {
+          low=mid + 1;
+        }
+        else {
+          high=mid;
+        }
+      }
+
+      previous[i]=(low > 0 ? tails[low - 1] : -1);
+      tails[low]=i;
+
+      if (low == length) {
+        length++;
+      }
+    }
+
+    boolean[] result=new boolean[count];
+
+    for (int i=(length > 0 ? tails[length - 1] : -1); i >= 0; i=previous[i]) {
+      result[i]=true;
+    }
+
+    return(result);
+  }
+
+  /**
+   * @return the number of values[0..count), which are in
+   *         ascending order, that are less than value
+   */
+  private static int lowerBound(int[] values, int count, int value) {
+    int low=0;
+    int high=count;
+
+    while (low < high) {
+      int mid=(low + high) >>> 1;
+
+      if (values[mid] < value) {
+        low=mid + 1;
+      }
+      else {
+        high=mid;
+      }
+    }
+
+    return(low);
+  }
+
+  private static void fenwickAdd(int[] tree, int key, int delta) {
+    for (int i=key + 1; i < tree.length; i+=i & -i) {
+      tree[i]+=delta;
+    }
+  }
+
+  /**
+   * @return the total for keys less than this one
+   */
+  private static int fenwickCount(int[] tree, int key) {
+    int result=0;
+
+    for (int i=key; i > 0; i-=i & -i) {
+      result+=tree[i];
+    }
+
+    return(result);
+  }
+}
@@ -0,0 +1,109 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Persistent storage for the models of a
+ * MasterDetailController, keyed by their tags. Supply one
+ * from buildModelStore() on your controller, and the model
+ * collection is saved as it changes, then restored from
+ * here (rather than from buildModelCollection()) in later
+ * processes. On restore, only the index (tags and titles)
+ * is read up front; each model is read when it is first
+ * used.
+ * 
+ * FileModelStore is a ready-made implementation. Methods
+ * may be called on any thread, though never more than one
+ * writing method at a time, so implementations need to be
+ * thread-safe.
+ * 
+ * @param <T>
+ *          the type of the model
+ */
+public interface ModelStore<T> {
+  /**
+   * @return the tags and titles of the stored models, in
+   *         collection order, or null if nothing has ever
+   *         been stored (as opposed to an empty list, if
+   *         all the models were removed)
+   * @throws IOException
+   */
+  List<Stub> readIndex() throws IOException;
+
+  /**
+   * @param tag
+   *          the tag of a stored model
+   * @return the model, or null if there is none with that
+   *         tag
+   * @throws IOException
+   */
+  T read(String tag) throws IOException;
+
+  /**
+   * Stores a model, replacing any with the same tag (which
+   * keeps its place in the collection order). A new model
+   * goes at the end.
+   * 
+   * @param tag
+   *          the model's tag
+   * @param title
+   *          the model's title
+   * @param model
+   *          the model
+   * @throws IOException
+   */
+  void write(String tag, String title, T model) throws IOException;
+
+  /**
+   * Removes a model, if it is stored.
+   * 
+   * @param tag
+   *          the model's tag
+   * @throws IOException
+   */
+  void delete(String tag) throws IOException;
+
+  /**
+   * Replaces the whole store, in the given order.
+   * 
+   * @param tags
+   *          the tags of all models
+   * @param titles
+   *          their titles
+   * @param models
+   *          the models themselves, where a null entry means
+   *          to keep what is already stored for that tag
+   * @throws IOException
+   */
+  void rewrite(String[] tags, String[] titles, List<T> models)
+      throws IOException;
+
+  /**
+   * The tag and title of a stored model, which is all that
+   * is needed to show it in the master.
+   */
+  public static class Stub {
+    public final String tag;
+    public final String title;
+
+    public Stub(String tag, String title) {
+      this.tag=tag;
+      this.title=title;
+    }
+  }
+}
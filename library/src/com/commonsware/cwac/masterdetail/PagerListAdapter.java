@@ -30,6 +30,8 @@ import android.widget.BaseAdapter;
 public class PagerListAdapter extends BaseAdapter {
   private PagerAdapter pages=null;
   private Assistant binder=null;
+  private final Observer observer=new Observer();
+  MasterDetailMetrics metrics=null;
 
   /**
    * Constructor for a PagerListAdapter. Work to generate
@@ -46,7 +48,25 @@ public class PagerListAdapter extends BaseAdapter {
     this.pages=pages;
     this.binder=binder;
 
-    pages.registerDataSetObserver(new Observer());
+    pages.registerDataSetObserver(observer);
+  }
+
+  /**
+   * Switches to a different PagerAdapter, such as one
+   * rebuilt from scratch, and notifies observers of the
+   * change. Keeping this ListAdapter, rather than making a
+   * new one, keeps the ListView's checked rows (by ID, if
+   * the IDs are stable).
+   * 
+   * @param pages
+   *          the PagerAdapter to be converted into a
+   *          ListAdapter from now on
+   */
+  void setPages(PagerAdapter pages) {
+    this.pages.unregisterDataSetObserver(observer);
+    this.pages=pages;
+    pages.registerDataSetObserver(observer);
+    notifyDataSetChanged();
   }
 
   /*
@@ -76,9 +96,24 @@ public class PagerListAdapter extends BaseAdapter {
    */
   @Override
   public long getItemId(int position) {
+    if (binder instanceof StableIdAssistant) {
+      return(((StableIdAssistant)binder).getItemId(position));
+    }
+
     return(position);
   }
 
+  /*
+   * (non-Javadoc)
+   * 
+   * @see android.widget.BaseAdapter#hasStableIds()
+   */
+  @Override
+  public boolean hasStableIds() {
+    return(binder instanceof StableIdAssistant
+        && ((StableIdAssistant)binder).hasStableIds());
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -87,7 +122,16 @@ public class PagerListAdapter extends BaseAdapter {
    */
   @Override
   public View getView(int position, View convertView, ViewGroup parent) {
-    return(binder.getView(position, convertView, parent));
+    if (metrics == null) {
+      return(binder.getView(position, convertView, parent));
+    }
+
+    long start=System.nanoTime();
+    View result=binder.getView(position, convertView, parent);
+
+    metrics.onTiming(MasterDetailMetrics.BIND_ROW, System.nanoTime() - start);
+
+    return(result);
   }
 
   private class Observer extends DataSetObserver {
@@ -110,4 +154,17 @@ public class PagerListAdapter extends BaseAdapter {
   public interface Assistant {
     View getView(int position, View convertView, ViewGroup parent);
   }
+
+  /**
+   * Extension of Assistant for cases where the assistant
+   * can supply IDs that identify the same item even as
+   * positions change. If hasStableIds() returns true, the
+   * ListView can retain checked states and views across
+   * changes to the underlying PagerAdapter.
+   */
+  public interface StableIdAssistant extends Assistant {
+    long getItemId(int position);
+
+    boolean hasStableIds();
+  }
 }
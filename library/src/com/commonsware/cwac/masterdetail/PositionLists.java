@@ -0,0 +1,126 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.util.List;
+
+/**
+ * Utilities for rearranging lists of models, and the
+ * controller's map of master positions to model positions
+ * (used while filtered), in one pass each.
+ * 
+ * This class has no Android dependencies.
+ */
+class PositionLists {
+  /**
+   * Removes the models at the given positions, compacting
+   * the survivors toward the front in one pass, then
+   * chopping off the tail.
+   * 
+   * @param models
+   *          the list of models
+   * @param doomed
+   *          the positions to remove, in ascending order
+   * @param count
+   *          the number of positions in doomed to use
+   */
+  static <T> void removePositions(List<T> models, int[] doomed,
+                                  int count) {
+    int next=0;
+    int kept=0;
+
+    for (int i=0; i < models.size(); i++) {
+      if (next < count && doomed[next] == i) {
+        next++;
+      }
+      else {
+        if (kept != i) {
+          models.set(kept, models.get(i));
+        }
+
+        kept++;
+      }
+    }
+
+    models.subList(kept, models.size()).clear();
+  }
+
+  /**
+   * Adds an entry to a map of master positions to model
+   * positions, for a model inserted into the collection,
+   * shifting the models after it.
+   * 
+   * @param visible
+   *          model positions, by master position, ascending
+   * @param inserted
+   *          the model position of the new model
+   * @return the new map
+   */
+  static int[] insertVisible(int[] visible, int inserted) {
+    int[] result=new int[visible.length + 1];
+    int at=0;
+
+    while (at < visible.length && visible[at] < inserted) {
+      result[at]=visible[at];
+      at++;
+    }
+
+    result[at]=inserted;
+
+    for (int i=at; i < visible.length; i++) {
+      result[i + 1]=visible[i] + 1;
+    }
+
+    return(result);
+  }
+
+  /**
+   * Removes entries from a map of master positions to model
+   * positions, shifting the survivors to account for the
+   * removed models.
+   * 
+   * @param visible
+   *          model positions, by master position, ascending
+   * @param doomed
+   *          master positions to remove, ascending
+   * @param removed
+   *          the corresponding model positions, ascending
+   * @param count
+   *          the number of positions in doomed to use
+   * @return the new map
+   */
+  static int[] removeVisible(int[] visible, int[] doomed, int[] removed,
+                             int count) {
+    int[] result=new int[visible.length - count];
+    int next=0;
+    int shift=0;
+    int kept=0;
+
+    for (int i=0; i < visible.length; i++) {
+      if (next < count && doomed[next] == i) {
+        next++;
+      }
+      else {
+        while (shift < count && removed[shift] < visible[i]) {
+          shift++;
+        }
+
+        result[kept++]=visible[i] - shift;
+      }
+    }
+
+    return(result);
+  }
+}
@@ -0,0 +1,117 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import java.util.ArrayList;
+
+/**
+ * A pool of master rows, inflated ahead of time, one per
+ * pass of the main application thread's message queue
+ * going idle, so the inflation happens while the main
+ * application thread has nothing better to do (e.g., while
+ * the model collection is being built in the background)
+ * rather than while the first frame of the list is being
+ * drawn.
+ * 
+ * The pool tops itself up to one screenful of rows, based
+ * on the height of the list once it has been laid out, or
+ * on an estimate until then.
+ */
+class RowViewPool implements MessageQueue.IdleHandler {
+  private final ArrayList<View> rows=new ArrayList<View>();
+  private final LayoutInflater inflater;
+  private final int layout;
+  private final ViewGroup parent;
+  private final int rowHeight;
+  private int target;
+  private boolean released=false;
+
+  /**
+   * @param inflater
+   *          the LayoutInflater to use for the rows
+   * @param layout
+   *          the layout resource for a row
+   * @param parent
+   *          the list that the rows are for
+   * @param rowHeight
+   *          the expected height of a row, in pixels
+   * @param estimate
+   *          the number of rows to inflate until the list
+   *          has been laid out
+   */
+  RowViewPool(LayoutInflater inflater, int layout, ViewGroup parent,
+              int rowHeight, int estimate) {
+    this.inflater=inflater;
+    this.layout=layout;
+    this.parent=parent;
+    this.rowHeight=rowHeight;
+    this.target=estimate;
+  }
+
+  /**
+   * Starts inflating rows when the main application thread
+   * is idle. Must be called on the main application thread.
+   */
+  void start() {
+    Looper.myQueue().addIdleHandler(this);
+  }
+
+  /*
+   * (non-Javadoc)
+   * 
+   * @see android.os.MessageQueue.IdleHandler#queueIdle()
+   */
+  @Override
+  public boolean queueIdle() {
+    if (released) {
+      return(false);
+    }
+
+    if (parent.getHeight() > 0 && rowHeight > 0) {
+      target=parent.getHeight() / rowHeight + 1;
+    }
+
+    if (rows.size() < target) {
+      rows.add(inflater.inflate(layout, parent, false));
+    }
+
+    return(rows.size() < target);
+  }
+
+  /**
+   * @return a pre-inflated row, or null if there are none
+   *         left
+   */
+  View obtain() {
+    int count=rows.size();
+
+    return(count > 0 ? rows.remove(count - 1) : null);
+  }
+
+  /**
+   * Stops inflating rows and drops any that have not been
+   * used. Must be called on the main application thread.
+   */
+  void release() {
+    released=true;
+    rows.clear();
+    Looper.myQueue().removeIdleHandler(this);
+  }
+}
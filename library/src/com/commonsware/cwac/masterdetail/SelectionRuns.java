@@ -0,0 +1,185 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Compact encoding of a set of checked positions, as runs
+ * of consecutive positions. Each run may be anchored by the
+ * tag of its first item, so that, when the selection is
+ * restored, the run can be found again even if positions
+ * have shifted in the meantime.
+ * 
+ * This class has no Android dependencies.
+ */
+final class SelectionRuns {
+  /**
+   * Supplies the tag for a position, or null if there is
+   * none.
+   */
+  interface Tagger {
+    String getTag(int position);
+  }
+
+  private final int[] runs; // start, length pairs
+  private final String[] anchors;
+
+  private SelectionRuns(int[] runs, String[] anchors) {
+    this.runs=runs;
+    this.anchors=anchors;
+  }
+
+  /**
+   * @param positions
+   *          the checked positions, in ascending order
+   * @param count
+   *          the number of positions in the array to use
+   * @param tagger
+   *          supplies anchor tags, or null for no anchors
+   * @return the encoded selection
+   */
+  static SelectionRuns encode(int[] positions, int count, Tagger tagger) {
+    int size=0;
+
+    for (int i=0; i < count; i++) {
+      if (i == 0 || positions[i] != positions[i - 1] + 1) {
+        size++;
+      }
+    }
+
+    int[] runs=new int[size * 2];
+    String[] anchors=(tagger == null ? null : new String[size]);
+    int run=-1;
+
+    for (int i=0; i < count; i++) {
+      if (i == 0 || positions[i] != positions[i - 1] + 1) {
+        run++;
+        runs[run * 2]=positions[i];
+
+        if (anchors != null) {
+          anchors[run]=tagger.getTag(positions[i]);
+        }
+      }
+
+      runs[run * 2 + 1]++;
+    }
+
+    return(new SelectionRuns(runs, anchors));
+  }
+
+  /**
+   * @param runs
+   *          start, length pairs, from getRuns()
+   * @param anchors
+   *          the anchor tags, from getAnchors(), or null
+   * @return the selection
+   */
+  static SelectionRuns fromArrays(int[] runs, String[] anchors) {
+    return(new SelectionRuns(runs == null ? new int[0] : runs, anchors));
+  }
+
+  /**
+   * @return the number of runs
+   */
+  int size() {
+    return(runs.length / 2);
+  }
+
+  /**
+   * @return the start position of the run at this index,
+   *         as of when the selection was encoded
+   */
+  int getStart(int index) {
+    return(runs[index * 2]);
+  }
+
+  /**
+   * @return the number of positions in the run at this
+   *         index
+   */
+  int getLength(int index) {
+    return(runs[index * 2 + 1]);
+  }
+
+  /**
+   * @return the tag of the first item in the run at this
+   *         index, or null
+   */
+  String getAnchor(int index) {
+    return(anchors == null ? null : anchors[index]);
+  }
+
+  int[] getRuns() {
+    return(runs);
+  }
+
+  String[] getAnchors() {
+    return(anchors);
+  }
+
+  /**
+   * @return roughly how many bytes this selection takes up
+   *         in a Parcel
+   */
+  int estimateSize() {
+    int result=runs.length * 4;
+
+    if (anchors != null) {
+      for (String anchor : anchors) {
+        result+=8 + (anchor == null ? 0 : anchor.length() * 2);
+      }
+    }
+
+    return(result);
+  }
+
+  void write(DataOutputStream out) throws IOException {
+    out.writeInt(size());
+    out.writeBoolean(anchors != null);
+
+    for (int i=0; i < size(); i++) {
+      out.writeInt(getStart(i));
+      out.writeInt(getLength(i));
+
+      if (anchors != null) {
+        out.writeBoolean(anchors[i] != null);
+
+        if (anchors[i] != null) {
+          out.writeUTF(anchors[i]);
+        }
+      }
+    }
+  }
+
+  static SelectionRuns read(DataInputStream in) throws IOException {
+    int size=in.readInt();
+    int[] runs=new int[size * 2];
+    String[] anchors=(in.readBoolean() ? new String[size] : null);
+
+    for (int i=0; i < size; i++) {
+      runs[i * 2]=in.readInt();
+      runs[i * 2 + 1]=in.readInt();
+
+      if (anchors != null && in.readBoolean()) {
+        anchors[i]=in.readUTF();
+      }
+    }
+
+    return(new SelectionRuns(runs, anchors));
+  }
+}
@@ -0,0 +1,150 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Index from model tags to positions within a List of
+ * models. The index is built
+ * lazily, kept up to date cheaply on appends, and rebuilt
+ * after anything else. The index remembers the list, its
+ * size, and the caller's change count it was built for, and
+ * is only rebuilt when one of those differs. Hits are
+ * verified against the list, so a stale position (e.g.,
+ * from the list being rearranged directly) costs a rebuild
+ * rather than a wrong answer. A miss costs no rebuild, so
+ * probing for absent tags stays cheap.
+ * 
+ * This class has no Android dependencies.
+ * 
+ * @param <T>
+ *          the type of the model
+ */
+abstract class TagIndex<T> {
+  /**
+   * @param model
+   *          a model
+   * @return the unique tag for that model
+   */
+  abstract String getTag(T model);
+
+  /**
+   * @param models
+   *          the list of models
+   * @param position
+   *          a position in the list
+   * @return the tag for the model at that position; override
+   *         this if the list can supply tags more cheaply
+   *         than by getting the models themselves
+   */
+  String getTagAt(List<T> models, int position) {
+    return(getTag(models.get(position)));
+  }
+
+  private HashMap<String, Integer> positions=null;
+  private List<T> builtFor=null;
+  private int builtSize=-1;
+  private int builtModCount=0;
+
+  /**
+   * @param models
+   *          the list of models
+   * @param tag
+   *          the tag to find
+   * @param modCount
+   *          the caller's count of changes to the list; a
+   *          different value than last time means the index
+   *          is rebuilt
+   * @return the position of the model with this tag, or -1
+   */
+  int positionOf(List<T> models, String tag, int modCount) {
+    if (tag == null) {
+      return(-1);
+    }
+
+    if (positions == null || builtFor != models
+        || builtSize != models.size() || builtModCount != modCount) {
+      rebuild(models, modCount);
+    }
+
+    Integer position=positions.get(tag);
+
+    if (position == null) {
+      return(-1);
+    }
+
+    if (position < models.size()
+        && tag.equals(getTagAt(models, position))) {
+      return(position);
+    }
+
+    // the list was rearranged directly, so this one time
+    // it is worth a rebuild before answering
+
+    rebuild(models, modCount);
+    position=positions.get(tag);
+
+    return(position == null ? -1 : position);
+  }
+
+  /**
+   * Call this after appending a model to the end of the
+   * list.
+   * 
+   * @param models
+   *          the list of models
+   * @param modCount
+   *          the caller's count of changes to the list, as of
+   *          the append
+   */
+  void onAppended(List<T> models, int modCount) {
+    if (positions != null && builtFor == models
+        && builtSize == models.size() - 1) {
+      int last=models.size() - 1;
+
+      positions.put(getTagAt(models, last), last);
+      builtSize=models.size();
+      builtModCount=modCount;
+    }
+    else {
+      invalidate();
+    }
+  }
+
+  /**
+   * Call this after changing the list in any way other than
+   * appending.
+   */
+  void invalidate() {
+    positions=null;
+    builtFor=null;
+  }
+
+  private void rebuild(List<T> models, int modCount) {
+    HashMap<String, Integer> result=
+        new HashMap<String, Integer>(models.size() * 4 / 3 + 1);
+
+    for (int i=0; i < models.size(); i++) {
+      result.put(getTagAt(models, i), i);
+    }
+
+    positions=result;
+    builtFor=models;
+    builtSize=models.size();
+    builtModCount=modCount;
+  }
+}
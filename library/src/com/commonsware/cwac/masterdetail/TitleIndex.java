@@ -0,0 +1,271 @@
+/***
+  Copyright (c) 2013 CommonsWare, LLC
+  
+  Licensed under the Apache License, Version 2.0 (the "License"); you may
+  not use this file except in compliance with the License. You may obtain
+  a copy of the License at
+    http://www.apache.org/licenses/LICENSE-2.0
+  Unless required by applicable law or agreed to in writing, software
+  distributed under the License is distributed on an "AS IS" BASIS,
+  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+  See the License for the specific language governing permissions and
+  limitations under the License.
+ */
+
+package com.commonsware.cwac.masterdetail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+
+/**
+ * Trigram index over item titles, for case-insensitive
+ * substring queries. Each item gets an ID when it is added;
+ * each trigram of its title maps to the ascending list of
+ * IDs whose titles contain it. A query intersects the lists
+ * for its trigrams, then checks the survivors against the
+ * full query.
+ * 
+ * The index remembers the result of the last query. If the
+ * next one contains the last one (e.g., the user typed
+ * another character), and nothing has been added since,
+ * only the last result is checked, rather than the whole
+ * index.
+ * 
+ * Removal just marks the item as dead; once dead items
+ * outnumber live ones, the index is rebuilt from the live
+ * ones, so its size stays proportional to the number of
+ * items rather than the number of changes. All methods are
+ * synchronized, so the index can be updated on the main
+ * application thread while queries run in the background.
+ * 
+ * This class has no Android dependencies.
+ */
+final class TitleIndex {
+  private static final int N=3;
+
+  private final ArrayList<String> tags=new ArrayList<String>();
+  private final ArrayList<String> titles=new ArrayList<String>();
+  private final ArrayList<String> keys=new ArrayList<String>();
+  private final HashMap<String, Integer> ids=new HashMap<String, Integer>();
+  private final HashMap<Long, Postings> postings=
+      new HashMap<Long, Postings>();
+  private final BitSet dead=new BitSet();
+  private int deadCount=0;
+  private int version=0;
+  private String lastQuery=null;
+  private int[] lastResult=null;
+  private int lastVersion=-1;
+
+  /**
+   * Adds an item to the index. If an item with this tag is
+   * already indexed, it is replaced.
+   * 
+   * @param tag
+   *          the item's unique tag
+   * @param title
+   *          the item's title
+   */
+  synchronized void add(String tag, String title) {
+    remove(tag);
+    version++;
+    index(tag, title, normalize(title));
+  }
+
+  private void index(String tag, String title, String key) {
+    int id=tags.size();
+
+    tags.add(tag);
+    titles.add(title);
+    keys.add(key);
+    ids.put(tag, id);
+
+    HashSet<Long> seen=new HashSet<Long>();
+
+    for (int i=0; i + N <= key.length(); i++) {
+      Long gram=gram(key, i);
+
+      if (seen.add(gram)) {
+        Postings list=postings.get(gram);
+
+        if (list == null) {
+          list=new Postings();
+          postings.put(gram, list);
+        }
+
+        list.add(id);
+      }
+    }
+  }
+
+  /**
+   * Removes an item from the index, if present.
+   * 
+   * @param tag
+   *          the item's unique tag
+   */
+  synchronized void remove(String tag) {
+    Integer id=ids.remove(tag);
+
+    if (id != null) {
+      dead.set(id);
+      deadCount++;
+
+      if (deadCount > ids.size()) {
+        compact();
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the index from just the live items, in their
+   * current order.
+   */
+  private void compact() {
+    ArrayList<String> oldTags=new ArrayList<String>(tags);
+    ArrayList<String> oldTitles=new ArrayList<String>(titles);
+    ArrayList<String> oldKeys=new ArrayList<String>(keys);
+
+    tags.clear();
+    titles.clear();
+    keys.clear();
+    ids.clear();
+    postings.clear();
+
+    for (int i=0; i < oldTags.size(); i++) {
+      if (!dead.get(i)) {
+        index(oldTags.get(i), oldTitles.get(i), oldKeys.get(i));
+      }
+    }
+
+    dead.clear();
+    deadCount=0;
+    version++; // IDs changed, so the last result is no good
+  }
+
+  /**
+   * @param tag
+   *          an item's unique tag
+   * @return the title the item was indexed with, or null
+   */
+  synchronized String getTitle(String tag) {
+    Integer id=ids.get(tag);
+
+    return(id == null ? null : titles.get(id));
+  }
+
+  /**
+   * Finds the items whose titles contain the query,
+   * ignoring case.
+   * 
+   * @param query
+   *          the text to look for
+   * @return the tags of the matching items
+   */
+  synchronized String[] query(String query) {
+    String key=normalize(query);
+    int[] candidates;
+
+    if (lastResult != null && lastVersion == version
+        && key.contains(lastQuery)) {
+      candidates=lastResult; // narrowing the last query
+    }
+    else if (key.length() >= N) {
+      candidates=intersect(key);
+    }
+    else {
+      candidates=null; // too short to use the index
+    }
+
+    int count=(candidates == null ? tags.size() : candidates.length);
+    int[] result=new int[count];
+    int found=0;
+
+    for (int i=0; i < count; i++) {
+      int id=(candidates == null ? i : candidates[i]);
+
+      if (!dead.get(id) && keys.get(id).contains(key)) {
+        result[found++]=id;
+      }
+    }
+
+    lastQuery=key;
+    lastResult=Arrays.copyOf(result, found);
+    lastVersion=version;
+
+    String[] matches=new String[found];
+
+    for (int i=0; i < found; i++) {
+      matches[i]=tags.get(result[i]);
+    }
+
+    return(matches);
+  }
+
+  private int[] intersect(String key) {
+    Postings[] lists=new Postings[key.length() - N + 1];
+
+    for (int i=0; i < lists.length; i++) {
+      lists[i]=postings.get(gram(key, i));
+
+      if (lists[i] == null) {
+        return(new int[0]);
+      }
+    }
+
+    // start with the shortest list, as the result can be no
+    // longer than that
+
+    Postings shortest=lists[0];
+
+    for (Postings list : lists) {
+      if (list.size < shortest.size) {
+        shortest=list;
+      }
+    }
+
+    int[] result=Arrays.copyOf(shortest.ids, shortest.size);
+    int count=result.length;
+
+    for (Postings list : lists) {
+      if (list != shortest) {
+        int kept=0;
+
+        for (int i=0; i < count; i++) {
+          if (Arrays.binarySearch(list.ids, 0, list.size, result[i]) >= 0) {
+            result[kept++]=result[i];
+          }
+        }
+
+        count=kept;
+      }
+    }
+
+    return(Arrays.copyOf(result, count));
+  }
+
+  private static String normalize(String text) {
+    return(text == null ? "" : text.toLowerCase(Locale.ROOT));
+  }
+
+  private static Long gram(String key, int offset) {
+    return(((long)key.charAt(offset) << 32)
+        | ((long)key.charAt(offset + 1) << 16) | key.charAt(offset + 2));
+  }
+
+  private static class Postings {
+    int[] ids=new int[4];
+    int size=0;
+
+    void add(int id) {
+      if (size == ids.length) {
+        ids=Arrays.copyOf(ids, size * 2);
+      }
+
+      ids[size++]=id;
+    }
+  }
+}
@@ -20,24 +20,37 @@
 
 package com.mobidevelop.widget;
 
+import java.util.Arrays;
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.ValueAnimator;
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PaintDrawable;
+import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
 import android.view.HapticFeedbackConstants;
 import android.view.MotionEvent;
+import android.view.View;
 import android.view.ViewGroup;
 
 
 /**
- * A layout that splits the available space between two child views.
+ * A layout that splits the available space between two or more child views.
  * 
- * An optionally movable bar exists between the children which allows the user
- * to redistribute the space allocated to each view.
+ * An optionally movable bar exists between each pair of adjacent children
+ * which allows the user to redistribute the space allocated to those views.
+ * Each child can have a weight (used to place splitters that have not been
+ * positioned explicitly) and a minimum and maximum size, via
+ * SplitPaneLayout.LayoutParams.
+ * 
+ * The methods that do not take a splitter index apply to the first splitter,
+ * which is the only one in a two-pane layout.
  */
 public class SplitPaneLayout extends ViewGroup {
   public static final int ORIENTATION_HORIZONTAL = 0;
@@ -46,22 +59,62 @@ public class SplitPaneLayout extends ViewGroup {
   private int mOrientation = 0;
   private int mSplitterSize = 12;
   private boolean mSplitterMovable = true;
-  private int mSplitterPosition = Integer.MIN_VALUE;
-  private float mSplitterPositionPercent = 0.5f;
+  private int[] mSplitterPositions = { Integer.MIN_VALUE };
+  private float[] mSplitterPositionPercents = { -1 };
   
   private Drawable mSplitterDrawable;
   private Drawable mSplitterDraggingDrawable;
   
-  private Rect mSplitterRect = new Rect();
+  private Rect[] mSplitterRects = { new Rect() };
+  private int[] mEffectivePositions = { 0 };
+  private boolean[] mSplitterShown = { true };
+  private int mArrangedExtent = -1;
+  
+  private boolean[] mPaneCollapsed = { false, false };
+  private float[] mPaneFractions = { 1, 1 };
+  private ValueAnimator[] mExpandAnimators = new ValueAnimator[2];
+  private int mCollapseThreshold = 0;
+  private OnPaneCollapseListener mOnPaneCollapseListener;
   
   private int lastX;
   private int lastY;
   private Rect temp = new Rect();
+  private Rect mDirty = new Rect();
   private boolean isDragging = false;
+  private int mDraggingSplitter = -1;
+  
+  private int[] mChildWidthSpecs = { -1, -1 };
+  private int[] mChildHeightSpecs = { -1, -1 };
+  private int mChildMeasureCount = 0;
+  private int mChildMeasureSkipCount = 0;
+  
+  private boolean mSnapshotDrag = false;
+  private boolean mSnapshotting = false;
+  private int[] mSnapshotLayerTypes = new int[2];
+  private Rect mSnapshotBounds = new Rect();
+  
+  private boolean mLiveResize = false;
+  private int mPendingPosition = Integer.MIN_VALUE;
+  private int mDragStartPosition = Integer.MIN_VALUE;
+  private float mDragStartPercent = -1;
+  private boolean mFramePending = false;
+  private final Runnable mApplyPendingPosition = new Runnable() {
+    @Override
+    public void run() {
+      mFramePending = false;
+      if (isDragging && mPendingPosition != Integer.MIN_VALUE) {
+        int position = clampSplitter(mDraggingSplitter, mPendingPosition, getExtent());
+        if (position != mSplitterPositions[mDraggingSplitter]) {
+          mSplitterPositions[mDraggingSplitter] = position;
+          mSplitterPositionPercents[mDraggingSplitter] = -1;
+          requestLayout();
+        }
+      }
+    }
+  };
   
   public SplitPaneLayout(Context context) {
     super(context);
-    mSplitterPositionPercent = 0.5f;
     mSplitterDrawable = new PaintDrawable(0x88FFFFFF);
     mSplitterDraggingDrawable = new PaintDrawable(0x88FFFFFF);
   } 
@@ -80,61 +133,305 @@ public class SplitPaneLayout extends ViewGroup {
   
   @Override
   protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    setMeasuredDimension(getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+        getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
     int widthSize = MeasureSpec.getSize(widthMeasureSpec);
     int heightSize = MeasureSpec.getSize(heightMeasureSpec);
      
     check();
 
     if (widthSize > 0 && heightSize > 0) {
+      int panes = getChildCount();
+      ensureCapacity(panes);
       switch (mOrientation) {
-        case 0: {
-          if (mSplitterPosition == Integer.MIN_VALUE && mSplitterPositionPercent < 0) {
-            mSplitterPosition = widthSize / 2;
-          } else if (mSplitterPosition == Integer.MIN_VALUE && mSplitterPositionPercent >= 0) {
-            mSplitterPosition = (int) (widthSize * mSplitterPositionPercent);
-          } else if (mSplitterPosition != Integer.MIN_VALUE && mSplitterPositionPercent < 0) {
-            mSplitterPositionPercent = (float) mSplitterPosition / (float) widthSize;
+        case ORIENTATION_HORIZONTAL: {
+          resolveSplitters(widthSize);
+          arrangePanes(widthSize);
+          int heightSpec = MeasureSpec.makeMeasureSpec(heightSize, MeasureSpec.EXACTLY);
+          for (int i = 0; i < panes; i++) {
+            if (mPaneCollapsed[i]) {
+              continue;
+            }
+            int size = Math.max(0, getPaneEnd(i, widthSize) - getPaneStart(i));
+            measurePane(i, MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY), heightSpec);
           }
-          getChildAt(0).measure(MeasureSpec.makeMeasureSpec(mSplitterPosition - (mSplitterSize / 2), MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(heightSize, MeasureSpec.EXACTLY));
-          getChildAt(1).measure(MeasureSpec.makeMeasureSpec(widthSize - (mSplitterSize / 2) - mSplitterPosition, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(heightSize, MeasureSpec.EXACTLY));       
           break;
         }
-        case 1: {
-          if (mSplitterPosition == Integer.MIN_VALUE && mSplitterPositionPercent < 0) {
-            mSplitterPosition = heightSize / 2;
-          } else if (mSplitterPosition == Integer.MIN_VALUE && mSplitterPositionPercent >= 0) {
-            mSplitterPosition = (int) (heightSize * mSplitterPositionPercent);
-          } else if (mSplitterPosition != Integer.MIN_VALUE && mSplitterPositionPercent < 0) {
-            mSplitterPositionPercent = (float) mSplitterPosition / (float) heightSize;
+        case ORIENTATION_VERTICAL: {
+          resolveSplitters(heightSize);
+          arrangePanes(heightSize);
+          int widthSpec = MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.EXACTLY);
+          for (int i = 0; i < panes; i++) {
+            if (mPaneCollapsed[i]) {
+              continue;
+            }
+            int size = Math.max(0, getPaneEnd(i, heightSize) - getPaneStart(i));
+            measurePane(i, widthSpec, MeasureSpec.makeMeasureSpec(size, MeasureSpec.EXACTLY));
           }     
-          getChildAt(0).measure(MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(mSplitterPosition - (mSplitterSize / 2), MeasureSpec.EXACTLY));
-          getChildAt(1).measure(MeasureSpec.makeMeasureSpec(widthSize, MeasureSpec.EXACTLY), MeasureSpec.makeMeasureSpec(heightSize - (mSplitterSize / 2) - mSplitterPosition, MeasureSpec.EXACTLY));
           break;
         }
       }   
     }
   }
+
+  /**
+   * Works out where each splitter goes for the given extent (width or
+   * height, depending on orientation), in a single pass. Splitters that
+   * have neither a position nor a percentage are placed according to the
+   * pane weights. Every splitter is then kept within the minimum and
+   * maximum sizes of the panes on either side of it.
+   */
+  private void resolveSplitters(int extent) {
+    int splitters = getChildCount() - 1;
+    float totalWeight = 0;
+    for (int i = 0; i <= splitters; i++) {
+      totalWeight += getPaneParams(i).weight;
+    }
+    int available = extent - (splitters * mSplitterSize);
+    float weightSoFar = 0;
+    for (int i = 0; i < splitters; i++) {
+      weightSoFar += getPaneParams(i).weight;
+      if (mSplitterPositions[i] == Integer.MIN_VALUE && mSplitterPositionPercents[i] < 0) {
+        float share = (totalWeight > 0 ? weightSoFar / totalWeight : (i + 1f) / (splitters + 1));
+        mSplitterPositions[i] = (int) (available * share) + (i * mSplitterSize) + (mSplitterSize / 2);
+      } else if (mSplitterPositions[i] == Integer.MIN_VALUE && mSplitterPositionPercents[i] >= 0) {
+        mSplitterPositions[i] = (int) (extent * mSplitterPositionPercents[i]);
+      } else if (mSplitterPositions[i] != Integer.MIN_VALUE && mSplitterPositionPercents[i] < 0) {
+        mSplitterPositionPercents[i] = (float) mSplitterPositions[i] / (float) extent;
+      }
+    }
+    for (int i = 0; i < splitters; i++) {
+      int position = clampSplitter(i, mSplitterPositions[i], extent);
+      if (position != mSplitterPositions[i]) {
+        mSplitterPositions[i] = position;
+        mSplitterPositionPercents[i] = (float) position / (float) extent;
+      }
+    }
+  }
+
+  /**
+   * Keeps a splitter position between its neighbors, such that the panes on
+   * either side of it respect their minimum and maximum sizes where
+   * possible. If they cannot all be satisfied, minimum sizes win.
+   */
+  private int clampSplitter(int index, int position, int extent) {
+    int splitters = getChildCount() - 1;
+    int half = mSplitterSize / 2;
+    long start = (index == 0 ? 0 : mSplitterPositions[index - 1] + half);
+    long end = (index == splitters - 1 ? extent : mSplitterPositions[index + 1] - half);
+    LayoutParams before = getPaneParams(index);
+    LayoutParams after = getPaneParams(index + 1);
+    long low = Math.max(start + half + before.minSize, end - half - after.maxSize);
+    long high = Math.min(start + half + before.maxSize, end - half - after.minSize);
+    return (int) Math.max(low, Math.min(position, high));
+  }
+
+  /**
+   * Works out where the splitters actually appear, given which panes are
+   * collapsed or expanding. A collapsed pane, and the splitter on one side
+   * of it, give up their space to the nearest shown pane before it, or after
+   * it if there is none before it. An expanding pane takes back a fraction
+   * of its space. The splitter of a collapsed first or last pane stays at
+   * the edge of the layout, so the user can drag the pane back out.
+   */
+  private void arrangePanes(int extent) {
+    int panes = getChildCount();
+    int half = mSplitterSize / 2;
+    int firstShown = panes;
+    for (int i = 0; i < panes - 1; i++) {
+      mEffectivePositions[i] = mSplitterPositions[i];
+      mSplitterShown[i] = true;
+    }
+    for (int i = 0; i < panes; i++) {
+      if (mPaneFractions[i] == 1) {
+        firstShown = Math.min(firstShown, i);
+      }
+    }
+    // panes after the first fully-shown one give their space to the left, so work
+    // leftwards from the end, where the right-hand edges are already settled
+    for (int i = panes - 1; i > firstShown; i--) {
+      if (mPaneFractions[i] < 1) {
+        int collapsedAt = (i == panes - 1 ? extent - half : mEffectivePositions[i]);
+        mEffectivePositions[i - 1] = collapsedAt
+            + (int) ((mSplitterPositions[i - 1] - collapsedAt) * mPaneFractions[i]);
+        mSplitterShown[i - 1] = (i == panes - 1 || !mPaneCollapsed[i]);
+      }
+    }
+    // panes before the first fully-shown one give their space to the right
+    for (int i = 0; i < firstShown && i < panes - 1; i++) {
+      if (mPaneFractions[i] < 1) {
+        int collapsedAt = (i == 0 ? half : mEffectivePositions[i - 1]);
+        mEffectivePositions[i] = collapsedAt
+            + (int) ((mSplitterPositions[i] - collapsedAt) * mPaneFractions[i]);
+        mSplitterShown[i] = (i == 0 || !mPaneCollapsed[i]);
+      }
+    }
+    mArrangedExtent = extent;
+  }
+
+  private int getPaneStart(int index) {
+    return (index == 0 ? 0 : mEffectivePositions[index - 1] + (mSplitterSize / 2));
+  }
+
+  private int getPaneEnd(int index, int extent) {
+    return (index == getChildCount() - 1 ? extent : mEffectivePositions[index] - (mSplitterSize / 2));
+  }
+
+  private int getExtent() {
+    return (mOrientation == ORIENTATION_HORIZONTAL ? getWidth() : getHeight());
+  }
+
+  private LayoutParams getPaneParams(int index) {
+    return (LayoutParams) getChildAt(index).getLayoutParams();
+  }
+
+  /**
+   * Grows the per-splitter and per-pane arrays to cover this many panes.
+   * Splitters beyond the old arrays start out unpositioned.
+   */
+  private void ensureCapacity(int panes) {
+    int splitters = Math.max(1, panes - 1);
+    if (mSplitterPositions.length < splitters) {
+      int old = mSplitterPositions.length;
+      mSplitterPositions = Arrays.copyOf(mSplitterPositions, splitters);
+      mSplitterPositionPercents = Arrays.copyOf(mSplitterPositionPercents, splitters);
+      mSplitterRects = Arrays.copyOf(mSplitterRects, splitters);
+      mEffectivePositions = Arrays.copyOf(mEffectivePositions, splitters);
+      mSplitterShown = Arrays.copyOf(mSplitterShown, splitters);
+      for (int i = old; i < splitters; i++) {
+        mSplitterPositions[i] = Integer.MIN_VALUE;
+        mSplitterPositionPercents[i] = -1;
+        mSplitterRects[i] = new Rect();
+      }
+    }
+    if (mChildWidthSpecs.length < panes) {
+      int old = mChildWidthSpecs.length;
+      mChildWidthSpecs = Arrays.copyOf(mChildWidthSpecs, panes);
+      mChildHeightSpecs = Arrays.copyOf(mChildHeightSpecs, panes);
+      Arrays.fill(mChildWidthSpecs, old, panes, -1);
+      Arrays.fill(mChildHeightSpecs, old, panes, -1);
+    }
+    if (mPaneCollapsed.length < panes) {
+      int old = mPaneCollapsed.length;
+      mPaneCollapsed = Arrays.copyOf(mPaneCollapsed, panes);
+      mPaneFractions = Arrays.copyOf(mPaneFractions, panes);
+      mExpandAnimators = Arrays.copyOf(mExpandAnimators, panes);
+      Arrays.fill(mPaneFractions, old, panes, 1);
+    }
+  }
+  
+  /**
+   * Measures a pane, unless it was last measured with the same specs and has
+   * not requested a layout since, in which case its existing measurement
+   * stands. This way a layout request from within one pane does not force
+   * the others to be measured again.
+   */
+  private void measurePane(int index, int widthSpec, int heightSpec) {
+    View child = getChildAt(index);
+    if (child.isLayoutRequested() || mChildWidthSpecs[index] != widthSpec
+        || mChildHeightSpecs[index] != heightSpec) {
+      child.measure(widthSpec, heightSpec);
+      mChildWidthSpecs[index] = widthSpec;
+      mChildHeightSpecs[index] = heightSpec;
+      mChildMeasureCount++;
+    } else {
+      mChildMeasureSkipCount++;
+    }
+  }
+  
+  /**
+   * Gets the number of times a pane has been measured by this layout.
+   * 
+   * @return the number of pane measurements
+   */
+  public int getChildMeasureCount() {
+    return mChildMeasureCount;
+  }
+  
+  /**
+   * Gets the number of times measuring a pane was skipped, because neither
+   * its specs nor its layout had changed since it was last measured.
+   * 
+   * @return the number of skipped pane measurements
+   */
+  public int getChildMeasureSkipCount() {
+    return mChildMeasureSkipCount;
+  }
+  
   @Override
   protected void onLayout(boolean changed, int l, int t, int r, int b) {
     int w = r - l;
     int h = b - t;
+    int panes = getChildCount();
+    int half = mSplitterSize / 2;
+    ensureCapacity(panes);
+    if (mArrangedExtent != (mOrientation == ORIENTATION_HORIZONTAL ? w : h)) {
+      arrangePanes(mOrientation == ORIENTATION_HORIZONTAL ? w : h);
+    }
     switch (mOrientation) {
-      case 0: {
-        getChildAt(0).layout(0, 0, mSplitterPosition - (mSplitterSize / 2), h);         
-        mSplitterRect.set(mSplitterPosition - (mSplitterSize / 2), 0, mSplitterPosition + (mSplitterSize / 2), h);          
-        getChildAt(1).layout(mSplitterPosition + (mSplitterSize / 2), 0, r, h);
+      case ORIENTATION_HORIZONTAL: {
+        for (int i = 0; i < panes; i++) {
+          if (mPaneCollapsed[i]) {
+            layoutCollapsedPane(i);
+          } else {
+            getChildAt(i).layout(getPaneStart(i), 0, getPaneEnd(i, w), h);
+          }
+          if (i < panes - 1) {
+            if (mSplitterShown[i]) {
+              setSplitterRect(i, mEffectivePositions[i] - half, 0, mEffectivePositions[i] + half, h);
+            } else {
+              setSplitterRect(i, 0, 0, 0, 0);
+            }
+          }
+        }
         break;
       }
-      case 1: {
-        getChildAt(0).layout(0, 0, w, mSplitterPosition - (mSplitterSize / 2));         
-        mSplitterRect.set(0, mSplitterPosition - (mSplitterSize / 2), w, mSplitterPosition + (mSplitterSize / 2));          
-        getChildAt(1).layout(0, mSplitterPosition + (mSplitterSize / 2), w, h);
+      case ORIENTATION_VERTICAL: {
+        for (int i = 0; i < panes; i++) {
+          if (mPaneCollapsed[i]) {
+            layoutCollapsedPane(i);
+          } else {
+            getChildAt(i).layout(0, getPaneStart(i), w, getPaneEnd(i, h));
+          }
+          if (i < panes - 1) {
+            if (mSplitterShown[i]) {
+              setSplitterRect(i, 0, mEffectivePositions[i] - half, w, mEffectivePositions[i] + half);
+            } else {
+              setSplitterRect(i, 0, 0, 0, 0);
+            }
+          }
+        }
         break;
       }
     }
   }
   
+  /**
+   * Shrinks a collapsed pane to nothing the first time it is laid out
+   * collapsed, so that it cannot be touched; after that, it is left alone.
+   */
+  private void layoutCollapsedPane(int index) {
+    View child = getChildAt(index);
+    if (child.getWidth() != 0 || child.getHeight() != 0) {
+      child.layout(child.getLeft(), child.getTop(), child.getLeft(), child.getTop());
+    }
+  }
+  
+  /**
+   * Moves a splitter rect, invalidating only the area it
+   * moved across (the children invalidate themselves).
+   */
+  private void setSplitterRect(int index, int left, int top, int right, int bottom) {
+    Rect rect = mSplitterRects[index];
+    if (rect.left != left || rect.top != top
+        || rect.right != right || rect.bottom != bottom) {
+      mDirty.set(rect);
+      rect.set(left, top, right, bottom);
+      mDirty.union(rect);
+      invalidate(mDirty);
+    }
+  }
+  
   @Override
   public boolean onTouchEvent(MotionEvent event) {
     if (mSplitterMovable) {
@@ -143,11 +440,20 @@ public class SplitPaneLayout extends ViewGroup {
 
       switch (event.getAction()) {
         case MotionEvent.ACTION_DOWN: {
-          if (mSplitterRect.contains(x,y)) {
+          int splitter = findSplitterAt(x, y);
+          if (splitter >= 0) {
             performHapticFeedback(HapticFeedbackConstants.VIRTUAL_KEY);
             isDragging = true;
-            temp.set(mSplitterRect);
+            mDraggingSplitter = splitter;
+            mDragStartPosition = mSplitterPositions[splitter];
+            mDragStartPercent = mSplitterPositionPercents[splitter];
+            temp.set(mSplitterRects[splitter]);
             invalidate(temp);
+            mSnapshotting = mSnapshotDrag && !mPaneCollapsed[splitter]
+                && !mPaneCollapsed[splitter + 1];
+            if (mSnapshotting) {
+              beginSnapshot();
+            }
             lastX = x;
             lastY = y;          
           }       
@@ -155,38 +461,72 @@ public class SplitPaneLayout extends ViewGroup {
         }
         case MotionEvent.ACTION_MOVE: {
           if (isDragging) {         
+            mDirty.set(temp);
             switch (mOrientation) {
               case ORIENTATION_HORIZONTAL: {
                 temp.offset((x - lastX), 0);
+                mPendingPosition = x;
                 break;
               }
               case ORIENTATION_VERTICAL: {
                 temp.offset(0, (int) (y - lastY));
+                mPendingPosition = y;
                 break;
               }
             }
             lastX = x;
             lastY = y;
-            invalidate();
+            mDirty.union(temp);
+            if (mSnapshotting) {
+              getSnapshotSpan(mDirty);
+            }
+            invalidate(mDirty);
+            if (mLiveResize && !mSnapshotting) {
+              scheduleLiveResize();
+            }
           }     
           break;
         }
         case MotionEvent.ACTION_UP: {
           if (isDragging) {
             isDragging = false;
-            switch (mOrientation) {
-              case ORIENTATION_HORIZONTAL: {
-                mSplitterPosition = x;
-                break;
-              }
-              case ORIENTATION_VERTICAL: {
-                mSplitterPosition = y;
-                break;
-              }           
+            cancelLiveResize();
+            if (mSnapshotting) {
+              mSnapshotting = false;
+              endSnapshot();
+            }
+            int extent = getExtent();
+            int splitter = mDraggingSplitter;
+            int position = clampSplitter(splitter,
+                (mOrientation == ORIENTATION_HORIZONTAL ? x : y), extent);
+            mDraggingSplitter = -1;
+            if (mPaneCollapsed[splitter] || mPaneCollapsed[splitter + 1]) {
+              expandIfDraggedOpen(splitter, position, extent);
+            } else if (!collapseIfBelowThreshold(splitter, position, extent)) {
+              mSplitterPositions[splitter] = position;
+              mSplitterPositionPercents[splitter] = -1;
+            }
+            remeasure();
+            requestLayout();
+          }
+          break;
+        }
+        case MotionEvent.ACTION_CANCEL: {
+          if (isDragging) {
+            // put the splitter back where it was last committed,
+            // undoing any live resize along the way
+            isDragging = false;
+            cancelLiveResize();
+            if (mSnapshotting) {
+              mSnapshotting = false;
+              endSnapshot();
             }
-            mSplitterPositionPercent = -1;
+            mSplitterPositions[mDraggingSplitter] = mDragStartPosition;
+            mSplitterPositionPercents[mDraggingSplitter] = mDragStartPercent;
+            mDraggingSplitter = -1;
             remeasure();
             requestLayout();
+            invalidate();
           }
           break;
         }
@@ -196,11 +536,35 @@ public class SplitPaneLayout extends ViewGroup {
     return false;
   }
   
+  /**
+   * Finds the splitter whose rect contains the given point.
+   * 
+   * @return the index of the splitter, or -1 if there is none there
+   */
+  private int findSplitterAt(int x, int y) {
+    for (int i = 0; i < getChildCount() - 1; i++) {
+      if (mSplitterShown[i] && mSplitterRects[i].contains(x, y)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
   @Override
   protected Parcelable onSaveInstanceState() {
     Parcelable superState = super.onSaveInstanceState();
     SavedState ss = new SavedState(superState);
-    ss.mSplitterPositionPercent = mSplitterPositionPercent;   
+    int splitters = Math.min(getSplitterCount(), mSplitterPositions.length);
+    int extent = getExtent();
+    ss.mSplitterPositionPercents = new float[splitters];
+    for (int i = 0; i < splitters; i++) {
+      float percent = mSplitterPositionPercents[i];
+      if (percent < 0 && mSplitterPositions[i] != Integer.MIN_VALUE && extent > 0) {
+        percent = (float) mSplitterPositions[i] / (float) extent;
+      }
+      ss.mSplitterPositionPercents[i] = percent;
+    }
+    ss.mPaneCollapsed = Arrays.copyOf(mPaneCollapsed, getChildCount());
     return ss;
   }
   @Override
@@ -211,9 +575,136 @@ public class SplitPaneLayout extends ViewGroup {
     }
     SavedState ss = (SavedState)state;
         super.onRestoreInstanceState(ss.getSuperState());
-        setSplitterPositionPercent(ss.mSplitterPositionPercent);
+        float[] percents = ss.mSplitterPositionPercents;
+        ensureCapacity(percents.length + 1);
+        for (int i = 0; i < percents.length; i++) {
+          mSplitterPositions[i] = Integer.MIN_VALUE;
+          mSplitterPositionPercents[i] = (percents[i] < 0 ? -1 : Math.min(percents[i], 1));
+        }
+        for (int i = 0; i < ss.mPaneCollapsed.length && i < getChildCount(); i++) {
+          setPaneCollapsed(i, ss.mPaneCollapsed[i], false);
+        }
+        requestLayout();
   } 
 
+  @Override
+  protected void onDetachedFromWindow() {
+    cancelLiveResize();
+    if (isDragging && mSnapshotting) {
+      isDragging = false;
+      mSnapshotting = false;
+      endSnapshot();
+    }
+    for (int i = 0; i < mExpandAnimators.length; i++) {
+      if (mExpandAnimators[i] != null) {
+        mExpandAnimators[i].end();
+      }
+    }
+    super.onDetachedFromWindow();
+  }
+
+  /**
+   * Puts the two panes on either side of the dragged splitter into
+   * hardware layers (or, without hardware acceleration, drawing caches),
+   * so that while the drag is underway they can be redrawn scaled into
+   * their new bounds from the snapshot, rather than re-laid out.
+   */
+  private void beginSnapshot() {
+    for (int i = 0; i < 2; i++) {
+      View child = getChildAt(mDraggingSplitter + i);
+      mSnapshotLayerTypes[i] = child.getLayerType();
+      child.setLayerType(LAYER_TYPE_HARDWARE, null);
+      child.buildLayer();
+    }
+  }
+  
+  /**
+   * Puts the panes back the way they were before beginSnapshot().
+   */
+  private void endSnapshot() {
+    for (int i = 0; i < 2; i++) {
+      getChildAt(mDraggingSplitter + i).setLayerType(mSnapshotLayerTypes[i], null);
+    }
+  }
+  
+  /**
+   * Sets a rect to the area covered by the two panes on either side of the
+   * dragged splitter, which is where their snapshots get drawn.
+   */
+  private void getSnapshotSpan(Rect span) {
+    View first = getChildAt(mDraggingSplitter);
+    View second = getChildAt(mDraggingSplitter + 1);
+    span.set(first.getLeft(), first.getTop(), second.getRight(), second.getBottom());
+  }
+  
+  /**
+   * Works out where a pane adjacent to the dragged splitter would be if the
+   * drag ended now.
+   */
+  private void getSnapshotBounds(int index, Rect bounds) {
+    int half = mSplitterSize / 2;
+    boolean horizontal = (mOrientation == ORIENTATION_HORIZONTAL);
+    int position = clampSplitter(mDraggingSplitter,
+        (horizontal ? temp.centerX() : temp.centerY()), getExtent());
+    int start = (index == mDraggingSplitter ? getPaneStart(index) : position + half);
+    int end = (index == mDraggingSplitter ? position - half : getPaneEnd(index, getExtent()));
+    if (horizontal) {
+      bounds.set(start, 0, end, getHeight());
+    } else {
+      bounds.set(0, start, getWidth(), end);
+    }
+  }
+  
+  @Override
+  protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+    int index = indexOfChild(child);
+    if (index < mPaneCollapsed.length && mPaneCollapsed[index]) {
+      return false;
+    }
+    if (isDragging && mSnapshotting && child.getWidth() > 0 && child.getHeight() > 0) {
+      if (index == mDraggingSplitter || index == mDraggingSplitter + 1) {
+        getSnapshotBounds(index, mSnapshotBounds);
+        if (mSnapshotBounds.isEmpty()) {
+          return false;
+        }
+        int saveCount = canvas.save();
+        canvas.clipRect(mSnapshotBounds);
+        canvas.translate(mSnapshotBounds.left, mSnapshotBounds.top);
+        canvas.scale((float) mSnapshotBounds.width() / child.getWidth(),
+            (float) mSnapshotBounds.height() / child.getHeight());
+        canvas.translate(-child.getLeft(), -child.getTop());
+        boolean result = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return result;
+      }
+    }
+    return super.drawChild(canvas, child, drawingTime);
+  }
+
+  /**
+   * Arranges to apply the latest drag position on the next
+   * frame, so however many move events arrive in a frame,
+   * the children are measured and laid out at most once.
+   */
+  private void scheduleLiveResize() {
+    if (!mFramePending) {
+      mFramePending = true;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        postOnAnimation(mApplyPendingPosition);
+      } else {
+        post(mApplyPendingPosition);
+      }
+    }
+  }
+  
+  private void cancelLiveResize() {
+    if (mFramePending) {
+      mFramePending = false;
+      removeCallbacks(mApplyPendingPosition);
+    }
+    mPendingPosition = Integer.MIN_VALUE;
+  }
+  
   /**
    * Convenience for calling own measure method.
    */
@@ -224,27 +715,70 @@ public class SplitPaneLayout extends ViewGroup {
   }
   
   /**
-   * Checks that we have exactly two children.
+   * Checks that we have at least two children.
    */ 
   private void check() {
-    if (getChildCount() != 2) {
-      throw new RuntimeException("SplitPaneLayout must have exactly two child views.");
+    if (getChildCount() < 2) {
+      throw new RuntimeException("SplitPaneLayout must have at least two child views.");
     }
   }
   
   @Override
   protected void dispatchDraw(Canvas canvas) {    
     super.dispatchDraw(canvas);
-    if (mSplitterDrawable != null) {
-      mSplitterDrawable.setBounds(mSplitterRect);
-      mSplitterDrawable.draw(canvas);
+    boolean dragOverlay = (isDragging && mSplitterDraggingDrawable != null
+        && mSplitterDraggingDrawable.getOpacity() != PixelFormat.TRANSPARENT);
+    if (mSplitterDrawable != null && mSplitterDrawable.getOpacity() != PixelFormat.TRANSPARENT) {
+      boolean dragOverlayOpaque = (dragOverlay
+          && mSplitterDraggingDrawable.getOpacity() == PixelFormat.OPAQUE);
+      for (int i = 0; i < getChildCount() - 1; i++) {
+        Rect rect = mSplitterRects[i];
+        if (!mSplitterShown[i] || canvas.quickReject(rect.left, rect.top,
+            rect.right, rect.bottom, Canvas.EdgeType.BW)) {
+          continue;
+        }
+        if (dragOverlayOpaque && temp.contains(rect)) {
+          continue; // about to be painted over
+        }
+        drawSplitter(canvas, mSplitterDrawable, rect);
+      }
     } 
-    if (isDragging) {
-      mSplitterDraggingDrawable.setBounds(temp);
-      mSplitterDraggingDrawable.draw(canvas);
+    if (dragOverlay) {
+      drawSplitter(canvas, mSplitterDraggingDrawable, temp);
     }
   }
   
+  /**
+   * Draws a splitter drawable in the given rect, only updating its bounds
+   * if the rect has moved since it was last drawn.
+   */
+  private void drawSplitter(Canvas canvas, Drawable drawable, Rect rect) {
+    if (!drawable.getBounds().equals(rect)) {
+      drawable.setBounds(rect);
+    }
+    drawable.draw(canvas);
+  }
+
+  @Override
+  protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+    return p instanceof LayoutParams;
+  }
+
+  @Override
+  protected LayoutParams generateDefaultLayoutParams() {
+    return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+  }
+
+  @Override
+  protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+    return new LayoutParams(p);
+  }
+
+  @Override
+  public LayoutParams generateLayoutParams(AttributeSet attrs) {
+    return new LayoutParams(getContext(), attrs);
+  }
+  
   /**
    * Gets the current drawable used for the splitter.
    * 
@@ -261,7 +795,7 @@ public class SplitPaneLayout extends ViewGroup {
    */   
   public void setSplitterDrawable(Drawable splitterDrawable) {
     mSplitterDrawable = splitterDrawable;
-    if (getChildCount() == 2) {
+    if (getChildCount() >= 2) {
       remeasure();  
     }
   }
@@ -304,7 +838,7 @@ public class SplitPaneLayout extends ViewGroup {
   public void setOrientation(int orientation) {
     if (mOrientation != orientation) {
       mOrientation = orientation;
-      if (getChildCount() == 2) {
+      if (getChildCount() >= 2) {
         remeasure();  
       }     
     }   
@@ -326,7 +860,7 @@ public class SplitPaneLayout extends ViewGroup {
    */   
   public void setSplitterSize(int splitterSize) {
     mSplitterSize = splitterSize;
-    if (getChildCount() == 2) {
+    if (getChildCount() >= 2) {
       remeasure();  
     }   
   }
@@ -349,13 +883,81 @@ public class SplitPaneLayout extends ViewGroup {
     mSplitterMovable = splitterMovable;
   }
   
+  /**
+   * Gets whether the panes are resized while the splitter is being dragged.
+   * 
+   * @return whether live resizing is enabled
+   */   
+  public boolean isLiveResize() {
+    return mLiveResize;
+  }
+  
+  /**
+   * Sets whether the panes are resized while the splitter is being dragged,
+   * rather than only when it is released. Move events are coalesced, so the
+   * panes are measured and laid out at most once per display frame. The
+   * default is false.
+   * 
+   * @param liveResize whether to resize the panes during a drag
+   */   
+  public void setLiveResize(boolean liveResize) {
+    mLiveResize = liveResize;
+    if (!liveResize) {
+      cancelLiveResize();
+    }
+  }
+  
+  /**
+   * Gets whether splitter drags scale snapshots of the panes.
+   * 
+   * @return whether snapshot dragging is enabled
+   */   
+  public boolean isSnapshotDrag() {
+    return mSnapshotDrag;
+  }
+  
+  /**
+   * Sets whether splitter drags scale snapshots of the panes, rather than
+   * laying them out. When a drag starts, the two panes beside the splitter
+   * are put into hardware layers; while it is underway, those layers are
+   * drawn scaled into the panes' would-be bounds; when it ends, the panes
+   * are measured and laid out once, for real. This takes precedence over
+   * live resizing, and is a good choice when the panes are expensive to lay
+   * out. The default is false.
+   * 
+   * @param snapshotDrag whether to drag snapshots of the panes
+   */   
+  public void setSnapshotDrag(boolean snapshotDrag) {
+    if (!isDragging) {
+      mSnapshotDrag = snapshotDrag;
+    }
+  }
+  
+  /**
+   * Gets the number of splitters, which is one less than the number of panes.
+   * 
+   * @return the number of splitters
+   */
+  public int getSplitterCount() {
+    return Math.max(1, getChildCount() - 1);
+  }
+
   /**
    * Gets the current position of the splitter in pixels.
    * 
    * @return the position of the splitter
    */
   public int getSplitterPosition() {
-    return mSplitterPosition;
+    return getSplitterPosition(0);
+  }
+  /**
+   * Gets the current position of a splitter in pixels.
+   * 
+   * @param index the splitter, counting from the left or top
+   * @return the position of the splitter
+   */
+  public int getSplitterPosition(int index) {
+    return (index < mSplitterPositions.length ? mSplitterPositions[index] : Integer.MIN_VALUE);
   }
   /**
    * Sets the current position of the splitter in pixels.
@@ -363,11 +965,21 @@ public class SplitPaneLayout extends ViewGroup {
    * @param position the desired position of the splitter
    */ 
   public void setSplitterPosition(int position) {
+    setSplitterPosition(0, position);
+  }
+  /**
+   * Sets the current position of a splitter in pixels.
+   * 
+   * @param index the splitter, counting from the left or top
+   * @param position the desired position of the splitter
+   */
+  public void setSplitterPosition(int index, int position) {
     if (position < 0) {
       position = 0;
     }
-    mSplitterPosition = position;
-    mSplitterPositionPercent = -1;
+    ensureCapacity(index + 2);
+    mSplitterPositions[index] = position;
+    mSplitterPositionPercents[index] = -1;
     remeasure();
   }
   
@@ -377,7 +989,16 @@ public class SplitPaneLayout extends ViewGroup {
    * @return the position of the splitter
    */
   public float getSplitterPositionPercent() {
-    return mSplitterPositionPercent;
+    return getSplitterPositionPercent(0);
+  }
+  /**
+   * Gets the current position of a splitter as a percent.
+   * 
+   * @param index the splitter, counting from the left or top
+   * @return the position of the splitter
+   */
+  public float getSplitterPositionPercent(int index) {
+    return (index < mSplitterPositionPercents.length ? mSplitterPositionPercents[index] : -1);
   } 
   
   /**
@@ -386,23 +1007,247 @@ public class SplitPaneLayout extends ViewGroup {
    * @param position the desired position of the splitter
    */   
   public void setSplitterPositionPercent(float position) {
+    setSplitterPositionPercent(0, position);
+  }
+  /**
+   * Sets the current position of a splitter as a percentage of the layout.
+   * 
+   * @param index the splitter, counting from the left or top
+   * @param position the desired position of the splitter
+   */
+  public void setSplitterPositionPercent(int index, float position) {
     if (position < 0) {
       position = 0;
     }
     if (position > 1) {
       position = 1;
     }
-    mSplitterPosition = Integer.MIN_VALUE;
-    mSplitterPositionPercent = position;
+    ensureCapacity(index + 2);
+    mSplitterPositions[index] = Integer.MIN_VALUE;
+    mSplitterPositionPercents[index] = position;
     remeasure();
   }
 
   
+  /**
+   * Collapses a pane after a drag, if the drag left it smaller than the
+   * collapse threshold. The splitter keeps its position from before the
+   * drag, so that expanding the pane again restores its old size.
+   * 
+   * @return true if a pane was collapsed
+   */
+  private boolean collapseIfBelowThreshold(int splitter, int position, int extent) {
+    if (mCollapseThreshold > 0) {
+      int half = mSplitterSize / 2;
+      int before = position - half - getPaneStart(splitter);
+      int after = getPaneEnd(splitter + 1, extent) - (position + half);
+      if (before < mCollapseThreshold && before <= after) {
+        return setPaneCollapsed(splitter, true, false);
+      }
+      if (after < mCollapseThreshold) {
+        return setPaneCollapsed(splitter + 1, true, false);
+      }
+    }
+    return false;
+  }
+  
+  /**
+   * Expands a collapsed pane after its splitter has been dragged out from
+   * the edge, provided that it was dragged out at least as far as the
+   * collapse threshold.
+   */
+  private void expandIfDraggedOpen(int splitter, int position, int extent) {
+    int half = mSplitterSize / 2;
+    int index = (mPaneCollapsed[splitter] ? splitter : splitter + 1);
+    int size;
+    if (index == splitter) {
+      size = position - half - (splitter == 0 ? 0 : mSplitterPositions[splitter - 1] + half);
+    } else {
+      size = (index == getChildCount() - 1 ? extent : mSplitterPositions[index] - half) - (position + half);
+    }
+    if (size > 0 && size >= mCollapseThreshold) {
+      mSplitterPositions[splitter] = position;
+      mSplitterPositionPercents[splitter] = -1;
+      setPaneCollapsed(index, false, false);
+    }
+  }
+  
+  /**
+   * Gets whether a pane is collapsed.
+   * 
+   * @param index the pane, counting from the left or top
+   * @return whether the pane is collapsed
+   */
+  public boolean isPaneCollapsed(int index) {
+    return (index < mPaneCollapsed.length && mPaneCollapsed[index]);
+  }
+  
+  /**
+   * Collapses or expands a pane. A collapsed pane is not measured, laid out
+   * or drawn, and its space goes to its neighbor. Expanding animates the
+   * pane back to its previous size. The last pane that is not collapsed
+   * cannot be collapsed.
+   * 
+   * @param index the pane, counting from the left or top
+   * @param collapsed whether the pane should be collapsed
+   */
+  public void setPaneCollapsed(int index, boolean collapsed) {
+    setPaneCollapsed(index, collapsed, getWindowToken() != null);
+  }
+  
+  private boolean setPaneCollapsed(final int index, boolean collapsed, boolean animate) {
+    ensureCapacity(Math.max(index + 1, getChildCount()));
+    if (mPaneCollapsed[index] == collapsed) {
+      return false;
+    }
+    if (mExpandAnimators[index] != null) {
+      mExpandAnimators[index].cancel();
+      mExpandAnimators[index] = null;
+    }
+    if (collapsed) {
+      int shown = 0;
+      for (int i = 0; i < getChildCount(); i++) {
+        if (!mPaneCollapsed[i]) {
+          shown++;
+        }
+      }
+      if (shown < 2) {
+        return false;
+      }
+      mPaneCollapsed[index] = true;
+      mPaneFractions[index] = 0;
+    } else {
+      mPaneCollapsed[index] = false;
+      if (animate) {
+        final ValueAnimator animator = ValueAnimator.ofFloat(0, 1);
+        animator.setDuration(getResources().getInteger(android.R.integer.config_shortAnimTime));
+        animator.addUpdateListener(new ValueAnimator.AnimatorUpdateListener() {
+          @Override
+          public void onAnimationUpdate(ValueAnimator animation) {
+            mPaneFractions[index] = (Float) animation.getAnimatedValue();
+            requestLayout();
+          }
+        });
+        animator.addListener(new AnimatorListenerAdapter() {
+          @Override
+          public void onAnimationEnd(Animator animation) {
+            if (mExpandAnimators[index] == animator) {
+              mExpandAnimators[index] = null;
+              mPaneFractions[index] = 1;
+              requestLayout();
+            }
+          }
+        });
+        mPaneFractions[index] = 0;
+        mExpandAnimators[index] = animator;
+        animator.start();
+      } else {
+        mPaneFractions[index] = 1;
+      }
+    }
+    requestLayout();
+    invalidate();
+    if (mOnPaneCollapseListener != null) {
+      if (collapsed) {
+        mOnPaneCollapseListener.onPaneCollapsed(this, index);
+      } else {
+        mOnPaneCollapseListener.onPaneExpanded(this, index);
+      }
+    }
+    return true;
+  }
+  
+  /**
+   * Gets the size, in pixels, below which a pane collapses when the user
+   * drags a splitter.
+   * 
+   * @return the collapse threshold
+   */
+  public int getCollapseThreshold() {
+    return mCollapseThreshold;
+  }
+  
+  /**
+   * Sets the size, in pixels, below which a pane collapses when the user
+   * drags a splitter. The default is 0, meaning that drags never collapse
+   * panes.
+   * 
+   * @param threshold the collapse threshold
+   */
+  public void setCollapseThreshold(int threshold) {
+    mCollapseThreshold = threshold;
+  }
+  
+  /**
+   * Sets a listener to be told when panes collapse or expand, e.g., to pause
+   * whatever is shown in a pane while it is collapsed.
+   * 
+   * @param listener the listener, or null for none
+   */
+  public void setOnPaneCollapseListener(OnPaneCollapseListener listener) {
+    mOnPaneCollapseListener = listener;
+  }
+  
+  /**
+   * Interface for something that wants to know when panes collapse or
+   * expand.
+   */
+  public interface OnPaneCollapseListener {
+    /**
+     * Called when a pane has collapsed.
+     * 
+     * @param layout the layout containing the pane
+     * @param index the pane, counting from the left or top
+     */
+    void onPaneCollapsed(SplitPaneLayout layout, int index);
+    
+    /**
+     * Called when a pane starts to expand.
+     * 
+     * @param layout the layout containing the pane
+     * @param index the pane, counting from the left or top
+     */
+    void onPaneExpanded(SplitPaneLayout layout, int index);
+  }
+  
+  /**
+   * Per-pane layout information: a weight, used to place splitters that have
+   * not been positioned explicitly (panes get space in proportion to their
+   * weights), plus minimum and maximum sizes in pixels along the split axis,
+   * which limit how far the user can drag the adjacent splitters.
+   */
+  public static class LayoutParams extends ViewGroup.LayoutParams {
+    public float weight = 1;
+    public int minSize = 0;
+    public int maxSize = Integer.MAX_VALUE;
+
+    public LayoutParams(Context c, AttributeSet attrs) {
+      super(c, attrs);
+    }
+    public LayoutParams(int width, int height) {
+      super(width, height);
+    }
+    public LayoutParams(int width, int height, float weight) {
+      super(width, height);
+      this.weight = weight;
+    }
+    public LayoutParams(ViewGroup.LayoutParams source) {
+      super(source);
+      if (source instanceof LayoutParams) {
+        LayoutParams other = (LayoutParams) source;
+        weight = other.weight;
+        minSize = other.minSize;
+        maxSize = other.maxSize;
+      }
+    }
+  }
+
   /**
    * Holds important values when we need to save instance state.
    */
   public static class SavedState extends BaseSavedState {
-    float mSplitterPositionPercent;
+    float[] mSplitterPositionPercents;
+    boolean[] mPaneCollapsed;
     
     SavedState(Parcelable superState) {
       super(superState);
@@ -410,7 +1255,8 @@ public class SplitPaneLayout extends ViewGroup {
     @Override
         public void writeToParcel(Parcel out, int flags) {
       super.writeToParcel(out, flags);
-      out.writeFloat(mSplitterPositionPercent);
+      out.writeFloatArray(mSplitterPositionPercents);
+      out.writeBooleanArray(mPaneCollapsed);
     }
         public static final Parcelable.Creator<SavedState> CREATOR
                 = new Parcelable.Creator<SavedState>() {
@@ -423,7 +1269,8 @@ public class SplitPaneLayout extends ViewGroup {
         };
         private SavedState(Parcel in) {
             super(in);
-            mSplitterPositionPercent = in.readFloat();
+            mSplitterPositionPercents = in.createFloatArray();
+            mPaneCollapsed = in.createBooleanArray();
         }        
   }
 }